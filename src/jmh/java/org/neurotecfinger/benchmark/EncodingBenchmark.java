@@ -0,0 +1,78 @@
+package org.neurotecfinger.benchmark;
+
+import org.neurotecfinger.matching.GalleryTemplate;
+import org.neurotecfinger.model.FingerprintEntity;
+import org.neurotecfinger.model.FingerprintImage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base64 and entity mapping costs on the scan and identify paths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodingBenchmark {
+
+    private byte[] template;
+
+    private String templateBase64;
+
+    private byte[] pngSizedPayload;
+
+    private String pngSizedBase64;
+
+    @Setup
+    public void setUp() {
+        template = SyntheticTemplates.gallery(1, 1).get(0).getTemplate();
+        templateBase64 = Base64.getEncoder().encodeToString(template);
+        // A compressed 400x500 fingerprint PNG is in the 100 KB range
+        pngSizedPayload = new byte[100 * 1024];
+        new java.util.Random(3).nextBytes(pngSizedPayload);
+        pngSizedBase64 = Base64.getEncoder().encodeToString(pngSizedPayload);
+    }
+
+    @Benchmark
+    public String encodeTemplateBase64() {
+        return Base64.getEncoder().encodeToString(template);
+    }
+
+    @Benchmark
+    public byte[] decodeTemplateBase64() {
+        return Base64.getDecoder().decode(templateBase64);
+    }
+
+    @Benchmark
+    public String encodeImageBase64() {
+        return Base64.getEncoder().encodeToString(pngSizedPayload);
+    }
+
+    @Benchmark
+    public byte[] decodeImageBase64() {
+        return Base64.getDecoder().decode(pngSizedBase64);
+    }
+
+    @Benchmark
+    public FingerprintImage mapScanToEntities() {
+        FingerprintEntity entity = new FingerprintEntity();
+        entity.setId(1L);
+        entity.setFingerType("r_index");
+        entity.setNativeTemplate(template);
+        entity.setQuality(2);
+        FingerprintImage image = new FingerprintImage();
+        image.setFingerprint(entity);
+        image.setImageData(pngSizedPayload);
+        image.setWsqData(pngSizedPayload);
+        return image;
+    }
+
+    @Benchmark
+    public GalleryTemplate mapEntityToGalleryTemplate() {
+        return new GalleryTemplate(1L, "r_index", 2, template);
+    }
+}
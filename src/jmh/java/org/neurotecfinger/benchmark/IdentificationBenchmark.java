@@ -0,0 +1,109 @@
+package org.neurotecfinger.benchmark;
+
+import com.neurotec.biometrics.client.NBiometricClient;
+import org.neurotecfinger.config.NBiometricClientFactory;
+import org.neurotecfinger.matching.FingerTypeIndex;
+import org.neurotecfinger.matching.GalleryTemplate;
+import org.neurotecfinger.matching.IdentifyOptions;
+import org.neurotecfinger.matching.JavaTemplateMatcher;
+import org.neurotecfinger.matching.MatchCandidate;
+import org.neurotecfinger.matching.NeurotecTemplateMatcher;
+import org.neurotecfinger.matching.ShardedIdentificationEngine;
+import org.neurotecfinger.matching.TemplateMatcherFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gallery load and 1:N identification at different gallery sizes.
+ * <p>
+ * {@code matcher=neurotec} uses SDK clients and falls back to the pure-Java stand-in when the native libraries
+ * or licenses are not available; the stand-in numbers measure the shard/merge machinery, not SDK matching.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdentificationBenchmark {
+
+    @Param({ "1000", "10000", "100000" })
+    public int gallerySize;
+
+    @Param({ "java", "neurotec" })
+    public String matcher;
+
+    @Param({ "1", "0" })
+    public int shards;
+
+    private List<GalleryTemplate> templates;
+
+    private ExecutorService executor;
+
+    private TemplateMatcherFactory matcherFactory;
+
+    private int shardCount;
+
+    private FingerTypeIndex gallery;
+
+    private byte[] enrolledProbe;
+
+    private byte[] unknownProbe;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        templates = SyntheticTemplates.gallery(gallerySize, 42);
+        shardCount = shards > 0 ? shards : Runtime.getRuntime().availableProcessors();
+        executor = Executors.newFixedThreadPool(shardCount);
+        if ("neurotec".equals(matcher) && SyntheticTemplates.sdkAvailable()) {
+            NBiometricClientFactory clientFactory = new NBiometricClientFactory(false, 50);
+            matcherFactory = () -> new NeurotecTemplateMatcher(clientFactory.create());
+        } else {
+            matcherFactory = () -> new JavaTemplateMatcher(50);
+        }
+        gallery = newGallery();
+        gallery.enroll(templates);
+        enrolledProbe = templates.get(gallerySize / 2).getTemplate();
+        unknownProbe = SyntheticTemplates.gallery(1, 7).get(0).getTemplate();
+    }
+
+    private FingerTypeIndex newGallery() {
+        return new FingerTypeIndex(() -> new ShardedIdentificationEngine(matcherFactory, shardCount, executor));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        gallery.close();
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public int loadGallery() {
+        // Closed so the SDK clients of each fresh gallery are disposed
+        try (FingerTypeIndex fresh = newGallery()) {
+            fresh.enroll(templates);
+            return fresh.size();
+        }
+    }
+
+    @Benchmark
+    public List<MatchCandidate> identifyEnrolledProbe() {
+        return gallery.identify(enrolledProbe, new IdentifyOptions(10, 0));
+    }
+
+    @Benchmark
+    public List<MatchCandidate> identifyUnknownProbe() {
+        return gallery.identify(unknownProbe, new IdentifyOptions(10, 0));
+    }
+
+    @Benchmark
+    public List<MatchCandidate> identifyWithFingerTypeHint() {
+        String fingerType = templates.get(gallerySize / 2).getFingerType();
+        return gallery.identify(enrolledProbe, Collections.singletonList(fingerType), new IdentifyOptions(10, 0));
+    }
+}
@@ -0,0 +1,90 @@
+package org.neurotecfinger.benchmark;
+
+import com.neurotec.images.NImage;
+import com.neurotec.images.NImageFormat;
+import com.neurotec.images.NPixelFormat;
+import com.neurotec.images.WSQInfo;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Image encode paths of a capture: the old AWT/ARGB PNG path, a grayscale ImageIO path and the SDK encoders.
+ * The SDK variants fall back to the grayscale ImageIO path when the native libraries are not available.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageEncodeBenchmark {
+
+    private static final int WIDTH = 400;
+
+    private static final int HEIGHT = 500;
+
+    private BufferedImage grayImage;
+
+    private boolean sdkAvailable;
+
+    private NImage nImage;
+
+    @Setup
+    public void setUp() {
+        byte[] pixels = SyntheticTemplates.grayscaleImage(WIDTH, HEIGHT, 5);
+        grayImage = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        grayImage.getRaster().setDataElements(0, 0, WIDTH, HEIGHT, pixels);
+        sdkAvailable = SyntheticTemplates.sdkAvailable();
+        if (sdkAvailable) {
+            nImage = NImage.fromData(NPixelFormat.GRAYSCALE_8U, WIDTH, HEIGHT, WIDTH, WIDTH, ByteBuffer.wrap(pixels));
+            nImage.setHorzResolution(500);
+            nImage.setVertResolution(500);
+            nImage.setResolutionIsAspectRatio(false);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (nImage != null) nImage.dispose();
+    }
+
+    // What scanFinger did before: redraw into TYPE_INT_ARGB, then ImageIO PNG
+    @Benchmark
+    public byte[] pngViaArgbRedraw() throws IOException {
+        BufferedImage argb = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = argb.createGraphics();
+        g.drawImage(grayImage, 0, 0, null);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(argb, "png", out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] pngGrayscaleImageIO() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(grayImage, "png", out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] pngNative() throws IOException {
+        if (!sdkAvailable) return pngGrayscaleImageIO();
+        return nImage.save(NImageFormat.getPNG()).toByteArray();
+    }
+
+    @Benchmark
+    public byte[] wsqNative() throws IOException {
+        if (!sdkAvailable) return pngGrayscaleImageIO();
+        WSQInfo info = (WSQInfo) NImageFormat.getWSQ().createInfo(nImage);
+        info.setBitRate(WSQInfo.DEFAULT_BIT_RATE);
+        return nImage.save(info).toByteArray();
+    }
+}
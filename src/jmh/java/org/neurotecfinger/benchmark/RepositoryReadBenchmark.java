@@ -0,0 +1,119 @@
+package org.neurotecfinger.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gallery read throughput against an embedded H2 database using the production schema: the template-only keyset
+ * pages used by the gallery loader versus reading full rows including the image payloads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryReadBenchmark {
+
+    @Param({ "1000", "10000" })
+    public int rows;
+
+    @Param({ "1000" })
+    public int pageSize;
+
+    private Connection connection;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:bench" + rows + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS fingerprint_entity (id BIGINT PRIMARY KEY, finger_type VARCHAR(255), "
+                    + "quality INT, native_template BYTEA NOT NULL, created_at TIMESTAMP)");
+            statement.execute("CREATE TABLE IF NOT EXISTS fingerprint_image (fingerprint_id BIGINT PRIMARY KEY, "
+                    + "image_data BYTEA, wsq_data BYTEA)");
+            statement.execute("DELETE FROM fingerprint_image");
+            statement.execute("DELETE FROM fingerprint_entity");
+        }
+        Random random = new Random(11);
+        byte[] template = new byte[SyntheticTemplates.TEMPLATE_SIZE];
+        byte[] image = new byte[100 * 1024];
+        byte[] wsq = new byte[30 * 1024];
+        connection.setAutoCommit(false);
+        try (PreparedStatement fingerprint = connection.prepareStatement(
+                "INSERT INTO fingerprint_entity (id, finger_type, quality, native_template, created_at) VALUES (?, ?, ?, ?, CURRENT_TIMESTAMP)");
+             PreparedStatement images = connection.prepareStatement(
+                     "INSERT INTO fingerprint_image (fingerprint_id, image_data, wsq_data) VALUES (?, ?, ?)")) {
+            for (int id = 1; id <= rows; id++) {
+                random.nextBytes(template);
+                fingerprint.setLong(1, id);
+                fingerprint.setString(2, SyntheticTemplates.FINGER_TYPES[id % SyntheticTemplates.FINGER_TYPES.length]);
+                fingerprint.setInt(3, 1 + random.nextInt(5));
+                fingerprint.setBytes(4, template);
+                fingerprint.addBatch();
+                images.setLong(1, id);
+                images.setBytes(2, image);
+                images.setBytes(3, wsq);
+                images.addBatch();
+                if (id % 500 == 0) {
+                    fingerprint.executeBatch();
+                    images.executeBatch();
+                }
+            }
+            fingerprint.executeBatch();
+            images.executeBatch();
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    // Same query shape as FingerprintRepository.findByIdGreaterThanOrderByIdAsc with the template projection
+    @Benchmark
+    public long templatePagesKeyset() throws SQLException {
+        long bytes = 0;
+        long lastId = 0;
+        try (PreparedStatement page = connection.prepareStatement(
+                "SELECT id, finger_type, quality, native_template FROM fingerprint_entity WHERE id > ? ORDER BY id LIMIT ?")) {
+            while (true) {
+                page.setLong(1, lastId);
+                page.setInt(2, pageSize);
+                int read = 0;
+                try (ResultSet rs = page.executeQuery()) {
+                    while (rs.next()) {
+                        lastId = rs.getLong(1);
+                        bytes += rs.getBytes(4).length;
+                        read++;
+                    }
+                }
+                if (read < pageSize) break;
+            }
+        }
+        return bytes;
+    }
+
+    // What findAll() cost when the image payloads were columns of the same entity
+    @Benchmark
+    public long fullRowsWithImages() throws SQLException {
+        long bytes = 0;
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT e.id, e.finger_type, e.quality, e.native_template, i.image_data, i.wsq_data "
+                     + "FROM fingerprint_entity e JOIN fingerprint_image i ON i.fingerprint_id = e.id")) {
+            while (rs.next()) {
+                bytes += rs.getBytes(4).length + rs.getBytes(5).length + rs.getBytes(6).length;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,66 @@
+package org.neurotecfinger.benchmark;
+
+import org.neurotecfinger.matching.GalleryTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic templates and images shared by the benchmarks.
+ */
+final class SyntheticTemplates {
+
+    private static final Logger log = LoggerFactory.getLogger(SyntheticTemplates.class);
+
+    // Typical size of a Neurotec finger template
+    static final int TEMPLATE_SIZE = 600;
+
+    static final String[] FINGER_TYPES = {
+            "r_thumb", "r_index", "r_middle", "r_ring", "r_little",
+            "l_thumb", "l_index", "l_middle", "l_ring", "l_little"
+    };
+
+    private SyntheticTemplates() {
+    }
+
+    static List<GalleryTemplate> gallery(int size, long seed) {
+        Random random = new Random(seed);
+        List<GalleryTemplate> templates = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            byte[] template = new byte[TEMPLATE_SIZE];
+            random.nextBytes(template);
+            templates.add(new GalleryTemplate(i, FINGER_TYPES[i % FINGER_TYPES.length], 1 + random.nextInt(5), template));
+        }
+        return templates;
+    }
+
+    // 500 dpi flat capture: roughly 400x500 8-bit grayscale with ridge-like stripes and noise
+    static byte[] grayscaleImage(int width, int height, long seed) {
+        Random random = new Random(seed);
+        byte[] pixels = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int ridge = (int) (127 + 100 * Math.sin((x + y * 0.3) / 3.0));
+                pixels[y * width + x] = (byte) Math.max(0, Math.min(255, ridge + random.nextInt(30) - 15));
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * @return whether the Neurotec native libraries can be loaded in this JVM
+     */
+    static boolean sdkAvailable() {
+        try {
+            Class.forName("com.neurotec.biometrics.client.NBiometricClient");
+            new com.neurotec.biometrics.NSubject().dispose();
+            return true;
+        } catch (Throwable e) {
+            log.warn("Neurotec SDK not usable here ({}), using stand-ins", e.toString());
+            return false;
+        }
+    }
+}
@@ -3,19 +3,53 @@ package org.neurotecfinger.config;
 import com.neurotec.biometrics.client.NBiometricClient;
 import com.neurotec.licensing.NLicense;
 import com.neurotec.licensing.NLicenseManager;
+import lombok.extern.slf4j.Slf4j;
+import org.neurotecfinger.device.NeurotecScannerRegistry;
+import org.neurotecfinger.device.ScannerRegistry;
+import org.neurotecfinger.device.SimulatedScannerRegistry;
+import org.neurotecfinger.matching.FingerTypeIndex;
+import org.neurotecfinger.matching.GalleryTemplate;
+import org.neurotecfinger.matching.JavaTemplateMatcher;
+import org.neurotecfinger.matching.MatchCandidate;
+import org.neurotecfinger.matching.NeurotecTemplateMatcher;
+import org.neurotecfinger.matching.NeurotecTemplateVerifier;
+import org.neurotecfinger.matching.ShardedIdentificationEngine;
+import org.neurotecfinger.matching.TemplateMatcherFactory;
+import org.neurotecfinger.matching.TemplateVerifier;
+import org.neurotecfinger.pool.BiometricEnginePools;
+import org.neurotecfinger.pool.BiometricRole;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+@Slf4j
 @Configuration
 public class BiometricConfig {
 
+    @Value("${biometric.matching.threshold:50}")
+    private int matchingThreshold;
+
+    /**
+     * Obtains the SDK licenses once for the whole process. Every bean creating SDK clients depends on this one.
+     */
     @Bean
-    public NBiometricClient biometricClient() throws IOException {
+    public NBiometricClientFactory biometricClientFactory() {
 
         NLicenseManager.setTrialMode(true);
         String[] licenses = { "FingerClient", "FingerMatcher" };
@@ -23,24 +57,181 @@ public class BiometricConfig {
             try {
                 boolean obtained = NLicense.obtain("/local", "5000", license);
                 if (obtained) {
-                    System.out.println("Obtained License: " + license);
+                    log.info("Obtained License: {}", license);
                 } else {
-                    System.err.println("Failed to obtain License: " + license);
-                    System.err.println(" Please ensure 'ActivationWizard.exe' has been run.");
+                    log.error("Failed to obtain License: {}. Please ensure 'ActivationWizard.exe' has been run.", license);
                 }
             } catch (IOException e) {
-                System.err.println("IO Error obtaining license: " + license);
-                e.printStackTrace();
+                log.error("IO Error obtaining license: {}", license, e);
             }
         }
 
-        // 3. Initialize Client
-        NBiometricClient client = new NBiometricClient();
-        client.setUseDeviceManager(true);
-        client.setFingersCalculateNFIQ(true);
-        client.setMatchingThreshold(50);
-        // client.setFingersCalculateNFIQ2(true); // Uncomment if you need NFIQ2.0 (slower but newer)
+        return new NBiometricClientFactory(false, matchingThreshold);
+    }
+
+    // Bounded client pools per role. No client runs its own device manager: capture binds the scanner found by the
+    // registry's single manager, so devices are enumerated once and not contended by every pooled client
+    @Bean
+    public BiometricEnginePools<NBiometricClient> biometricEnginePools(NBiometricClientFactory biometricClientFactory,
+                                                                       @Value("${biometric.pool.capture.size:4}") int captureSize,
+                                                                       @Value("${biometric.pool.extraction.size:0}") int extractionSize,
+                                                                       @Value("${biometric.pool.matching.size:2}") int matchingSize,
+                                                                       @Value("${biometric.pool.borrow-timeout-ms:30000}") long borrowTimeoutMs) {
+        Map<BiometricRole, Integer> sizes = new EnumMap<>(BiometricRole.class);
+        sizes.put(BiometricRole.CAPTURE, captureSize);
+        sizes.put(BiometricRole.EXTRACTION, shardCount(extractionSize));
+        sizes.put(BiometricRole.MATCHING, matchingSize);
+        return new BiometricEnginePools<>(role -> biometricClientFactory, sizes, borrowTimeoutMs);
+    }
+
+    // Scanner discovery: real devices by default, or image-replaying scanners with biometric.scanner.mode=simulated
+    @Bean
+    @ConditionalOnProperty(name = "biometric.scanner.mode", havingValue = "neurotec", matchIfMissing = true)
+    public ScannerRegistry neurotecScannerRegistry(NBiometricClientFactory biometricClientFactory) {
+        return new NeurotecScannerRegistry();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "biometric.scanner.mode", havingValue = "simulated")
+    public ScannerRegistry simulatedScannerRegistry(@Value("${biometric.scanner.simulated.image-dir}") String imageDir,
+                                                    @Value("${biometric.scanner.simulated.count:2}") int count,
+                                                    @Value("${biometric.scanner.simulated.capture-delay-ms:500}") long captureDelayMs) {
+        return new SimulatedScannerRegistry(Paths.get(imageDir), count, captureDelayMs);
+    }
+
+    // Gallery shards: each gets its own SDK client by default, or the pure-Java stand-in with biometric.matcher=java.
+    // Shard clients hold a gallery, so they are dedicated to their shard rather than borrowed from a pool.
+    @Bean
+    @ConditionalOnProperty(name = "biometric.matcher", havingValue = "neurotec", matchIfMissing = true)
+    public TemplateMatcherFactory neurotecTemplateMatcherFactory(NBiometricClientFactory biometricClientFactory) {
+        return () -> new NeurotecTemplateMatcher(biometricClientFactory.create());
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "biometric.matcher", havingValue = "java")
+    public TemplateMatcherFactory javaTemplateMatcherFactory() {
+        return () -> new JavaTemplateMatcher(matchingThreshold);
+    }
+
+    // 1:1 verification with the same matcher choice; SDK clients come from the matching pool
+    @Bean
+    @ConditionalOnProperty(name = "biometric.matcher", havingValue = "neurotec", matchIfMissing = true)
+    public TemplateVerifier neurotecTemplateVerifier(BiometricEnginePools<NBiometricClient> biometricEnginePools) {
+        return new NeurotecTemplateVerifier(biometricEnginePools.get(BiometricRole.MATCHING));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "biometric.matcher", havingValue = "java")
+    public TemplateVerifier javaTemplateVerifier() {
+        return (probeTemplate, references) -> {
+            List<MatchCandidate> results = new ArrayList<>(references.size());
+            for (GalleryTemplate reference : references) {
+                results.add(new MatchCandidate(reference.getId(), JavaTemplateMatcher.score(probeTemplate, reference.getTemplate())));
+            }
+            return results;
+        };
+    }
+
+    @Bean
+    public ExecutorService identificationExecutor(@Value("${biometric.identify.shards:0}") int shards) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        return Executors.newFixedThreadPool(shardCount(shards), r -> {
+            Thread thread = new Thread(r, "identify-shard-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Probes of /api/identify/batch are matched on this pool, separate from the shard pool they fan out to
+    @Bean
+    public ExecutorService batchIdentificationExecutor(@Value("${biometric.identify.batch-concurrency:0}") int concurrency) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        return Executors.newFixedThreadPool(shardCount(concurrency), r -> {
+            Thread thread = new Thread(r, "identify-batch-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // PNG and WSQ encoding of captured images, run alongside template extraction
+    @Bean
+    public ExecutorService imageEncodingExecutor(@Value("${biometric.capture.encoding-threads:4}") int threads) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "image-encode-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Scan sessions. Bounded threads and queue: a full queue rejects new scans instead of piling them up. Platform
+    // threads on purpose: captures block inside native SDK calls, which would pin a virtual thread to its carrier.
+    @Bean
+    public ExecutorService captureExecutor(@Value("${biometric.capture.threads:${biometric.pool.capture.size:4}}") int threads,
+                                           @Value("${biometric.capture.queue-size:16}") int queueSize) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), r -> {
+            Thread thread = new Thread(r, "capture-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Decoding and template extraction workers of the bulk import
+    @Bean
+    public ExecutorService importExecutor(@Value("${biometric.import.workers:0}") int workers) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        return Executors.newFixedThreadPool(shardCount(workers), r -> {
+            Thread thread = new Thread(r, "import-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Background rewrites of the gallery snapshot file
+    @Bean
+    public ScheduledExecutorService snapshotExecutor() {
+        return Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "gallery-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Long-running gallery maintenance such as duplicate consolidation, one job at a time
+    @Bean
+    public ExecutorService maintenanceExecutor() {
+        return Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "gallery-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Single writer flushing queued fingerprints to the database
+    @Bean
+    public ScheduledExecutorService persistExecutor() {
+        return Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "fingerprint-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // One sharded engine per finger type bucket, all matched on the shared identification executor. The index has at
+    // most FingerTypeIndex.MAX_BUCKETS buckets, each shard holding one matcher (one SDK client with the Neurotec matcher),
+    // disposed when the context closes
+    @Bean(destroyMethod = "close")
+    public FingerTypeIndex identificationEngine(TemplateMatcherFactory matcherFactory,
+                                               @Qualifier("identificationExecutor") ExecutorService identificationExecutor,
+                                               @Value("${biometric.identify.shards:0}") int shards) {
+        int shardCount = shardCount(shards);
+        log.info("Identification engine: {} shards per finger type, at most {} matchers",
+                shardCount, shardCount * FingerTypeIndex.MAX_BUCKETS);
+        return new FingerTypeIndex(() -> new ShardedIdentificationEngine(matcherFactory, shardCount, identificationExecutor));
+    }
 
-        return client;
+    private static int shardCount(int configured) {
+        return configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,36 @@
+package org.neurotecfinger.config;
+
+import com.neurotec.biometrics.client.NBiometricClient;
+import org.neurotecfinger.pool.EngineFactory;
+
+/**
+ * Creates SDK clients configured the same way as the original singleton client.
+ * Licenses must already be obtained; see {@link BiometricConfig}.
+ */
+public class NBiometricClientFactory implements EngineFactory<NBiometricClient> {
+
+    private final boolean useDeviceManager;
+
+    private final int matchingThreshold;
+
+    public NBiometricClientFactory(boolean useDeviceManager, int matchingThreshold) {
+        this.useDeviceManager = useDeviceManager;
+        this.matchingThreshold = matchingThreshold;
+    }
+
+    @Override
+    public NBiometricClient create() {
+        NBiometricClient client = new NBiometricClient();
+        client.setUseDeviceManager(useDeviceManager);
+        client.setFingersCalculateNFIQ(true);
+        client.setMatchingThreshold(matchingThreshold);
+        // client.setFingersCalculateNFIQ2(true); // Uncomment if you need NFIQ2.0 (slower but newer)
+        return client;
+    }
+
+    @Override
+    public void destroy(NBiometricClient client) {
+        client.cancel();
+        client.dispose();
+    }
+}
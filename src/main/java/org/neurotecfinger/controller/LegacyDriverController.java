@@ -1,95 +1,418 @@
 package org.neurotecfinger.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.neurotecfinger.matching.FingerTypes;
+import org.neurotecfinger.pool.BiometricEnginePools;
+import org.neurotecfinger.service.BatchIdentificationService;
+import org.neurotecfinger.service.BulkImportService;
+import org.neurotecfinger.service.CaptureFormat;
+import org.neurotecfinger.service.DuplicateConsolidationService;
+import org.neurotecfinger.service.EnrollmentMode;
+import org.neurotecfinger.service.FingerprintGallery;
+import org.neurotecfinger.service.FingerprintImageService;
+import org.neurotecfinger.service.ProbeResultCache;
+import org.neurotecfinger.service.ScanSession;
+import org.neurotecfinger.service.ScanSessionService;
 import org.neurotecfinger.service.ScannerService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 
 @RestController
 @CrossOrigin(origins = "*") // Allow all origins like the old driver
+@Slf4j
 public class LegacyDriverController {
 
+    private static final String NDJSON = "application/x-ndjson";
+
+    private static final long SCAN_RESPONSE_GRACE_MS = 5000;
+
+    private static final long SCAN_EVENTS_TIMEOUT_MS = 5 * 60 * 1000;
+
+    private static final String FORMATS_ERROR = "formats must be a comma separated list of template, png and wsq";
+
+    private static final MediaType IMAGE_WSQ = MediaType.parseMediaType("image/x-wsq");
+
+    private static final Duration IMAGE_MAX_AGE = Duration.ofDays(7);
+
     @Autowired
     private ScannerService scannerService;
 
+    @Autowired
+    private ScanSessionService scanSessionService;
+
+    @Autowired
+    private BatchIdentificationService batchIdentificationService;
+
+    @Autowired
+    private BulkImportService bulkImportService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private BiometricEnginePools<?> enginePools;
+
+    @Autowired
+    private FingerprintGallery gallery;
+
+    @Autowired
+    private ProbeResultCache probeResultCache;
+
+    @Autowired
+    private FingerprintImageService fingerprintImageService;
+
+    @Autowired
+    private DuplicateConsolidationService duplicateConsolidationService;
+
     @GetMapping("/ping")
     public String ping() {
         return "ok";
     }
 
     @PostMapping("/stopscan")
-    public String stopScan() {
-        if (scannerService.isScanning()) {
-            scannerService.cancelScanner();
-        }
+    public String stopScan(@RequestParam(value = "scannerId", required = false) String scannerId) {
+        scanSessionService.cancelByScanner(scannerId);
         return "ok";
     }
 
+    // Connected scanners and whether each one is capturing
+    @GetMapping("/api/scanners")
+    public List<Map<String, Object>> scanners() {
+        return scannerService.listScanners();
+    }
+
+    @PostMapping("/api/scanners/refresh")
+    public List<Map<String, Object>> refreshScanners() {
+        return scannerService.refreshScanners();
+    }
+
+    // Legacy blocking contract, served without holding a request thread: the scan runs as a session and the
+    // response is written when it finishes (413 on timeout, 409 when the scanner is busy, 500 when cancelled)
     @PostMapping("/fingerprints")
-    public ResponseEntity<Map<String, Object>> scanFingerprints(@RequestParam(value = "Timeout", defaultValue = "10000") String timeoutStr, @RequestParam(value = "fingerType", required = false) String fingerType) {
-        Map<String, Object> response = new HashMap<>();
+    public DeferredResult<ResponseEntity<Map<String, Object>>> scanFingerprints(@RequestParam(value = "Timeout", defaultValue = "10000") String timeoutStr, @RequestParam(value = "fingerType", required = false) String fingerType,
+                                                                                @RequestParam(value = "scannerId", required = false) String scannerId,
+                                                                                @RequestParam(value = "formats", required = false) String formats) {
         int timeout = Integer.parseInt(timeoutStr);
-        System.out.println("Timeout param:" + timeoutStr);
+        log.debug("Timeout param: {}", timeoutStr);
+        // The session times itself out; the request timeout is only a backstop
+        DeferredResult<ResponseEntity<Map<String, Object>>> deferred = new DeferredResult<>(timeout + SCAN_RESPONSE_GRACE_MS);
 
+        Set<CaptureFormat> captureFormats;
         try {
-            // Call async scan and wait for result with timeout
-            Map<String, Object> fingerDetails = scannerService.scanFinger(fingerType).get(timeout, TimeUnit.MILLISECONDS);
-            if (!"unknown".equalsIgnoreCase(fingerType)) {
-                scannerService.saveFingerprintData(
-                        fingerType,
-                        (String) fingerDetails.get("WSQImage"),
-                        (String) fingerDetails.get("BMPBase64"),
-                        (String) fingerDetails.get("NativeTemplate"),
-                        (Integer) fingerDetails.get("NFIQ")
-                );
-                System.out.println("✅ ENROLL: Saved " + fingerType + " to DB.");
-            } else {
-                System.out.println("ℹ️ IDENTIFY: Scanned without saving.");
-            }
-            // Success Response Structure
-            response.put("data", fingerDetails);
-            return ResponseEntity.ok(response);
+            // formats: comma separated subset of template,png,wsq (default: all)
+            captureFormats = CaptureFormat.parse(formats);
+        } catch (IllegalArgumentException e) {
+            deferred.setResult(scanError(HttpStatus.BAD_REQUEST, FORMATS_ERROR));
+            return deferred;
+        }
+        ScanSession session;
+        try {
+            session = scanSessionService.start(fingerType, scannerId, captureFormats, !"unknown".equalsIgnoreCase(fingerType), timeout);
+        } catch (RejectedExecutionException e) {
+            deferred.setResult(scanError(HttpStatus.SERVICE_UNAVAILABLE, "Too many scans waiting, try again later"));
+            return deferred;
+        }
+        deferred.onTimeout(session::timeout);
+        session.getCompletion().thenAccept(snapshot -> deferred.setResult(toLegacyScanResponse(session, snapshot)));
+        return deferred;
+    }
 
-        } catch (TimeoutException e) {
-            scannerService.cancelScanner();
-            response.put("error", "Timeout waiting for scan");
-            return ResponseEntity.status(413).body(response); // 413 Payload Too Large (Used as timeout code in old driver)
+    private static ResponseEntity<Map<String, Object>> toLegacyScanResponse(ScanSession session, Map<String, Object> snapshot) {
+        switch (session.getState()) {
+            case COMPLETED:
+                // Success Response Structure
+                Map<String, Object> response = new HashMap<>();
+                response.put("data", snapshot.get("data"));
+                return ResponseEntity.ok(response);
+            case TIMED_OUT:
+                // 413 Payload Too Large (Used as timeout code in old driver)
+                return scanError(HttpStatus.PAYLOAD_TOO_LARGE, session.getError());
+            case CANCELLED:
+                // /stopscan: the old driver's capture failed with a cancelled status, answered as an error
+                return scanError(HttpStatus.INTERNAL_SERVER_ERROR, session.getError());
+            default:
+                String errorMsg = session.getError();
+                // Handle "Busy" logic (Old BScannerException code 409)
+                if (errorMsg != null && errorMsg.contains("already trying")) {
+                    return scanError(HttpStatus.CONFLICT, errorMsg);
+                }
+                return scanError(HttpStatus.INTERNAL_SERVER_ERROR, errorMsg);
+        }
+    }
 
-        } catch (Exception e) {
-            // Unwrap ExecutionException
-            Throwable cause = e.getCause() != null ? e.getCause() : e;
-            String errorMsg = cause.getMessage();
-
-            // Handle "Busy" logic (Old BScannerException code 409)
-            if (errorMsg != null && errorMsg.contains("already trying")) {
-                response.put("error", errorMsg);
-                return ResponseEntity.status(409).body(response);
+    private static ResponseEntity<Map<String, Object>> scanError(HttpStatus status, String error) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("error", error);
+        return ResponseEntity.status(status).body(response);
+    }
+
+    // --- SCAN SESSIONS API ---
+    // Starts a scan and returns its session id at once (202). Follow it with GET /api/scans/{id} (poll),
+    // /api/scans/{id}/result (long-poll) or /api/scans/{id}/events (Server-Sent Events); cancel with DELETE.
+    @PostMapping("/api/scans")
+    public ResponseEntity<Map<String, Object>> startScan(@RequestParam(value = "fingerType", required = false) String fingerType,
+                                                         @RequestParam(value = "scannerId", required = false) String scannerId,
+                                                         @RequestParam(value = "formats", required = false) String formats,
+                                                         @RequestParam(value = "save", required = false) Boolean save,
+                                                         @RequestParam(value = "timeoutMs", defaultValue = "10000") long timeoutMs) {
+        boolean saveCapture = save != null ? save : fingerType != null && !"unknown".equalsIgnoreCase(fingerType);
+        Set<CaptureFormat> captureFormats;
+        try {
+            captureFormats = CaptureFormat.parse(formats);
+        } catch (IllegalArgumentException e) {
+            return scanError(HttpStatus.BAD_REQUEST, FORMATS_ERROR);
+        }
+        try {
+            ScanSession session = scanSessionService.start(fingerType, scannerId, captureFormats, saveCapture, timeoutMs);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(session.snapshot());
+        } catch (RejectedExecutionException e) {
+            return scanError(HttpStatus.SERVICE_UNAVAILABLE, "Too many scans waiting, try again later");
+        }
+    }
+
+    @GetMapping("/api/scans")
+    public List<Map<String, Object>> scans() {
+        return scanSessionService.list();
+    }
+
+    @GetMapping("/api/scans/{sessionId}")
+    public ResponseEntity<Map<String, Object>> scan(@PathVariable String sessionId) {
+        return scanSessionService.find(sessionId)
+                .map(session -> ResponseEntity.ok(session.snapshot()))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    // 200 with the final state once the session ends, or 202 with the current state after waitMs
+    @GetMapping("/api/scans/{sessionId}/result")
+    public DeferredResult<ResponseEntity<Map<String, Object>>> scanResult(@PathVariable String sessionId,
+                                                                          @RequestParam(value = "waitMs", defaultValue = "30000") long waitMs) {
+        DeferredResult<ResponseEntity<Map<String, Object>>> deferred = new DeferredResult<>(waitMs);
+        Optional<ScanSession> found = scanSessionService.find(sessionId);
+        if (!found.isPresent()) {
+            deferred.setResult(ResponseEntity.notFound().build());
+            return deferred;
+        }
+        ScanSession session = found.get();
+        deferred.onTimeout(() -> deferred.setResult(ResponseEntity.status(HttpStatus.ACCEPTED).body(session.snapshot())));
+        session.getCompletion().thenAccept(snapshot -> deferred.setResult(ResponseEntity.ok(snapshot)));
+        return deferred;
+    }
+
+    // One event per state change (CAPTURING, CAPTURED, EXTRACTED, ...), named after the state; closed after the last
+    @GetMapping(value = "/api/scans/{sessionId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> scanEvents(@PathVariable String sessionId) {
+        Optional<ScanSession> found = scanSessionService.find(sessionId);
+        if (!found.isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+        ScanSession session = found.get();
+        SseEmitter emitter = new SseEmitter(SCAN_EVENTS_TIMEOUT_MS);
+        Consumer<Map<String, Object>> subscriber = new Consumer<Map<String, Object>>() {
+            @Override
+            public void accept(Map<String, Object> snapshot) {
+                String state = String.valueOf(snapshot.get("state"));
+                try {
+                    emitter.send(SseEmitter.event().name(state).data(snapshot, MediaType.APPLICATION_JSON));
+                    if (ScanSession.State.valueOf(state).isTerminal()) {
+                        emitter.complete();
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    // Client went away
+                    session.unsubscribe(this);
+                }
             }
+        };
+        emitter.onCompletion(() -> session.unsubscribe(subscriber));
+        emitter.onTimeout(() -> session.unsubscribe(subscriber));
+        session.subscribe(subscriber);
+        return ResponseEntity.ok(emitter);
+    }
 
-            // Default Error
-            e.printStackTrace();
-            response.put("error", errorMsg != null ? errorMsg.split("\\r")[0] : "Unknown Error");
-            return ResponseEntity.status(500).body(response);
+    @DeleteMapping("/api/scans/{sessionId}")
+    public ResponseEntity<Map<String, Object>> cancelScan(@PathVariable String sessionId) {
+        if (!scanSessionService.cancel(sessionId)) {
+            return ResponseEntity.notFound().build();
         }
+        return scanSessionService.find(sessionId)
+                .map(session -> ResponseEntity.ok(session.snapshot()))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    // --- ENROLLMENT ---
+    // Captures several impressions of one finger, rejects those worse than biometric.enroll.max-nfiq and saves one
+    // record: the best impression (mode=BEST) or all accepted ones merged into one template (mode=MERGE).
+    // Runs as a scan session; follow it with the /api/scans/{id} endpoints.
+    @PostMapping("/api/enrollments")
+    public ResponseEntity<Map<String, Object>> startEnrollment(@RequestParam("fingerType") String fingerType,
+                                                               @RequestParam(value = "scannerId", required = false) String scannerId,
+                                                               @RequestParam(value = "impressions", required = false) Integer impressions,
+                                                               @RequestParam(value = "mode", required = false) String mode,
+                                                               @RequestParam(value = "timeoutMs", defaultValue = "60000") long timeoutMs) {
+        EnrollmentMode enrollmentMode;
+        try {
+            enrollmentMode = mode != null ? EnrollmentMode.parse(mode) : null;
+        } catch (IllegalArgumentException e) {
+            return scanError(HttpStatus.BAD_REQUEST, "mode must be BEST or MERGE");
+        }
+        if (fingerType.isBlank() || "unknown".equalsIgnoreCase(fingerType)) {
+            return scanError(HttpStatus.BAD_REQUEST, "fingerType is required for enrollment");
+        }
+        try {
+            ScanSession session = scanSessionService.startEnrollment(fingerType, scannerId, impressions, enrollmentMode, timeoutMs);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(session.snapshot());
+        } catch (RejectedExecutionException e) {
+            return scanError(HttpStatus.SERVICE_UNAVAILABLE, "Too many scans waiting, try again later");
+        }
+    }
+
+    // --- MAINTENANCE ---
+    // Finds stored records of the same impression and keeps one per group. Dry run by default: only reports groups.
+    @PostMapping("/api/maintenance/dedupe")
+    public ResponseEntity<Map<String, Object>> startDedupe(@RequestParam(value = "dryRun", defaultValue = "true") boolean dryRun,
+                                                           @RequestParam(value = "mode", defaultValue = "BEST") String mode,
+                                                           @RequestParam(value = "minScore", required = false) Integer minScore) {
+        EnrollmentMode consolidation;
+        try {
+            consolidation = EnrollmentMode.parse(mode);
+        } catch (IllegalArgumentException e) {
+            return scanError(HttpStatus.BAD_REQUEST, "mode must be BEST or MERGE");
+        }
+        if (!duplicateConsolidationService.start(dryRun, consolidation, minScore)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(duplicateConsolidationService.status());
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(duplicateConsolidationService.status());
+    }
+
+    @GetMapping("/api/maintenance/dedupe")
+    public Map<String, Object> dedupeStatus() {
+        return duplicateConsolidationService.status();
+    }
+
+    // --- STORED IMAGES ---
+    // Binary image of a stored record instead of Base64 JSON. The format comes from ?format=png|wsq or else the
+    // Accept header (image/png, image/x-wsq; PNG for */*). Images never change, so the ETag is derived from the id and
+    // format and a matching If-None-Match is answered 304 once the record is known to exist, without reading the image;
+    // a deleted record is 404. Range requests get 206.
+    @GetMapping("/api/fingerprints/{id}/image")
+    public ResponseEntity<Resource> fingerprintImage(@PathVariable long id,
+                                                     @RequestParam(value = "format", required = false) String format,
+                                                     @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                                     WebRequest webRequest) {
+        CaptureFormat imageFormat;
+        try {
+            imageFormat = negotiateImageFormat(format, accept);
+        } catch (IllegalArgumentException e) {
+            imageFormat = null;
+        }
+        if (imageFormat == null) {
+            return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+        }
+        String extension = imageFormat.name().toLowerCase(Locale.ROOT);
+        String etag = "\"" + id + "-" + extension + "\"";
+        if (!fingerprintImageService.exists(id)) return ResponseEntity.notFound().build();
+        if (webRequest.checkNotModified(etag)) return null;
+
+        MediaType mediaType = imageFormat == CaptureFormat.WSQ ? IMAGE_WSQ : MediaType.IMAGE_PNG;
+        return fingerprintImageService.image(id, imageFormat)
+                .map(image -> imageResponse(mediaType, etag)
+                        .varyBy(HttpHeaders.ACCEPT)
+                        .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"fingerprint-" + id + "." + extension + "\"")
+                        .body((Resource) new ByteArrayResource(image)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    // PNG preview scaled to fit size x size pixels (16 to biometric.images.thumbnail-max-size), cached server side
+    @GetMapping("/api/fingerprints/{id}/thumbnail")
+    public ResponseEntity<Resource> fingerprintThumbnail(@PathVariable long id,
+                                                         @RequestParam(value = "size", defaultValue = "160") int size,
+                                                         WebRequest webRequest) {
+        String etag = "\"" + id + "-thumb-" + size + "\"";
+        if (!fingerprintImageService.exists(id)) return ResponseEntity.notFound().build();
+        if (webRequest.checkNotModified(etag)) return null;
+        return fingerprintImageService.thumbnail(id, size)
+                .map(thumbnail -> imageResponse(MediaType.IMAGE_PNG, etag).body((Resource) new ByteArrayResource(thumbnail)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    private static ResponseEntity.BodyBuilder imageResponse(MediaType mediaType, String etag) {
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .eTag(etag)
+                .cacheControl(CacheControl.maxAge(IMAGE_MAX_AGE).cachePrivate())
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes");
+    }
+
+    private static CaptureFormat negotiateImageFormat(String format, String accept) {
+        if (format != null && !format.isBlank()) {
+            CaptureFormat requested = CaptureFormat.valueOf(format.trim().toUpperCase(Locale.ROOT));
+            return requested == CaptureFormat.TEMPLATE ? null : requested;
+        }
+        if (accept == null || accept.isBlank()) return CaptureFormat.PNG;
+        List<MediaType> accepted = MediaType.parseMediaTypes(accept);
+        MediaType.sortBySpecificityAndQuality(accepted);
+        for (MediaType type : accepted) {
+            if (type.getQualityValue() == 0) continue;
+            // image/* and */* get PNG, which browsers can display
+            if (type.isCompatibleWith(MediaType.IMAGE_PNG)) return CaptureFormat.PNG;
+            if (type.isCompatibleWith(IMAGE_WSQ)) return CaptureFormat.WSQ;
+        }
+        return null;
+    }
+
+    // Per-role client pool usage and borrow wait times
+    @GetMapping("/api/engine-pools")
+    public Map<String, Object> enginePoolStats() {
+        return enginePools.stats();
+    }
+
+    // Hit/miss counts of the repeated-probe result cache
+    @GetMapping("/api/identify/cache")
+    public Map<String, Object> identifyCacheStats() {
+        return probeResultCache.stats();
     }
 
     @PostMapping("/getWsqFromBmp")
     public ResponseEntity<Map<String, String>> getWsqFromBmp(@RequestParam("uploaded_file") MultipartFile file) {
         Map<String, String> response = new HashMap<>();
         try {
-            String wsqBase64 = scannerService.convertBmpToWsq(file);
-            response.put("WSQImage", wsqBase64);
+            byte[] wsq = scannerService.convertBmpToWsq(file);
+            response.put("WSQImage", Base64.getEncoder().encodeToString(wsq));
             return ResponseEntity.ok(response);
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("WSQ conversion failed", e);
             response.put("error", e.getMessage());
             // Old driver returned 200 OK with error field sometimes, but 500 is safer if it failed hard.
             // Following old pattern roughly:
@@ -105,10 +428,138 @@ public class LegacyDriverController {
     }
 
     // --- IDENTIFY API ---
+    // Optional per-request fields: "maxResults" (or "k"), "threshold", "speed" (LOW, MEDIUM, HIGH)
     @PostMapping("/api/identify")
-    public ResponseEntity<Map<String, Object>> identify(@RequestBody Map<String, String> payload) {
-        String template = payload.get("nativeTemplate");
-        System.out.println("template from controller: " + template);
-        return ResponseEntity.ok(scannerService.identify(template));
+    public ResponseEntity<Map<String, Object>> identify(@RequestBody Map<String, Object> payload) {
+        Object template = payload.get("nativeTemplate");
+        List<String> fingerTypes = FingerTypes.parseHint(payload);
+        if (!(template instanceof String)) {
+            return ResponseEntity.ok(scannerService.identify(null, fingerTypes));
+        }
+        try {
+            byte[] probeTemplate = Base64.getDecoder().decode((String) template);
+            return ResponseEntity.ok(scannerService.identify(probeTemplate, fingerTypes, gallery.options(payload)));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("matchFound", false);
+            response.put("error", "nativeTemplate must be Base64; maxResults and threshold numbers; speed LOW, MEDIUM or HIGH");
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    // --- VERIFY API (1:1) ---
+    // Body: {"nativeTemplate": "...", "id": 123} or {"nativeTemplate": "...", "ids": [123, 124], "threshold": 60}
+    @PostMapping("/api/verify")
+    public ResponseEntity<Map<String, Object>> verify(@RequestBody Map<String, Object> payload) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("verified", false);
+        Object template = payload.get("nativeTemplate");
+        if (!(template instanceof String)) {
+            response.put("error", "nativeTemplate is required");
+            return ResponseEntity.badRequest().body(response);
+        }
+        byte[] probeTemplate;
+        List<Long> ids;
+        Integer threshold;
+        try {
+            probeTemplate = Base64.getDecoder().decode((String) template);
+            ids = parseIds(payload.containsKey("ids") ? payload.get("ids") : payload.get("id"));
+            Object thresholdValue = payload.get("threshold");
+            threshold = thresholdValue != null ? Integer.valueOf(thresholdValue.toString()) : null;
+        } catch (IllegalArgumentException e) {
+            response.put("error", "nativeTemplate must be Base64, ids and threshold must be numbers");
+            return ResponseEntity.badRequest().body(response);
+        }
+        if (ids.isEmpty()) {
+            response.put("error", "id or ids is required");
+            return ResponseEntity.badRequest().body(response);
+        }
+        return ResponseEntity.ok(scannerService.verify(probeTemplate, ids, threshold));
+    }
+
+    // Accepts a single id or a list, as numbers or strings (identify returns ids as strings)
+    private static List<Long> parseIds(Object value) {
+        List<Long> ids = new ArrayList<>();
+        if (value instanceof Collection) {
+            for (Object id : (Collection<?>) value) {
+                if (id != null) ids.add(Long.valueOf(id.toString()));
+            }
+        } else if (value != null) {
+            ids.add(Long.valueOf(value.toString()));
+        }
+        return ids;
+    }
+
+    // --- BATCH IDENTIFY API ---
+    // Body: {"probes": [{"id": "...", "nativeTemplate": "...", "fingerTypes": [...]}, ...]}
+    @PostMapping(value = "/api/identify/batch", consumes = MediaType.APPLICATION_JSON_VALUE, produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> identifyBatch(@RequestBody Map<String, Object> payload) {
+        List<Map<String, Object>> probes = new ArrayList<>();
+        Object value = payload.get("probes");
+        if (value instanceof Collection) {
+            for (Object probe : (Collection<?>) value) {
+                if (probe instanceof Map) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> probeMap = (Map<String, Object>) probe;
+                    probes.add(probeMap);
+                }
+            }
+        }
+        return streamBatch(() -> probes.iterator());
+    }
+
+    // Body: one probe object per line, read as probes are matched so large inputs are never fully buffered
+    @PostMapping(value = "/api/identify/batch", consumes = NDJSON, produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> identifyBatchStream(HttpServletRequest request) {
+        return streamBatch(() -> objectMapper.readerFor(Map.class).readValues(request.getInputStream()));
+    }
+
+    // --- BULK IMPORT API ---
+    // Body: one record per line with the scan response keys (fingerType, NFIQ, NativeTemplate, WSQImage, BMPBase64)
+    @PostMapping(value = "/api/fingerprints/import", consumes = NDJSON)
+    public ResponseEntity<Map<String, Object>> importFingerprints(HttpServletRequest request) {
+        try {
+            return ResponseEntity.ok(bulkImportService.importNdjson(request.getInputStream()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Map<String, Object> response = new HashMap<>();
+            response.put("error", "Import interrupted");
+            return ResponseEntity.status(500).body(response);
+        } catch (Exception e) {
+            log.error("Bulk import failed", e);
+            Map<String, Object> response = new HashMap<>();
+            response.put("error", e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    // Writes one NDJSON line per probe as soon as it finishes, then a summary line with overall throughput
+    private ResponseEntity<StreamingResponseBody> streamBatch(ProbeSource source) {
+        StreamingResponseBody body = out -> {
+            try {
+                Map<String, Object> summary = batchIdentificationService.identifyBatch(source.open(), result -> writeLine(out, result));
+                writeLine(out, summary);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    private void writeLine(OutputStream out, Map<String, Object> line) {
+        try {
+            out.write(objectMapper.writeValueAsBytes(line));
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ProbeSource {
+        Iterator<Map<String, Object>> open() throws IOException;
     }
 }
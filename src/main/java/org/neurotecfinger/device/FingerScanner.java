@@ -0,0 +1,23 @@
+package org.neurotecfinger.device;
+
+import com.neurotec.biometrics.NBiometricStatus;
+import com.neurotec.biometrics.NSubject;
+import com.neurotec.biometrics.client.NBiometricClient;
+
+/**
+ * One finger capture device. Captures on different scanners may run concurrently; the caller makes sure a single
+ * scanner is used by one capture at a time.
+ */
+public interface FingerScanner {
+
+    String getId();
+
+    String getDisplayName();
+
+    /**
+     * Captures one finger into the first {@code NFinger} of the subject.
+     *
+     * @param client pooled client the capture runs on
+     */
+    NBiometricStatus capture(NBiometricClient client, NSubject subject);
+}
@@ -0,0 +1,34 @@
+package org.neurotecfinger.device;
+
+import com.neurotec.biometrics.NBiometricStatus;
+import com.neurotec.biometrics.NSubject;
+import com.neurotec.biometrics.client.NBiometricClient;
+import com.neurotec.devices.NFScanner;
+
+/**
+ * Physical scanner found by the SDK device manager.
+ */
+public class NeurotecFingerScanner implements FingerScanner {
+
+    private final NFScanner device;
+
+    public NeurotecFingerScanner(NFScanner device) {
+        this.device = device;
+    }
+
+    @Override
+    public String getId() {
+        return device.getId();
+    }
+
+    @Override
+    public String getDisplayName() {
+        return device.getDisplayName();
+    }
+
+    @Override
+    public NBiometricStatus capture(NBiometricClient client, NSubject subject) {
+        client.setFingerScanner(device);
+        return client.capture(subject);
+    }
+}
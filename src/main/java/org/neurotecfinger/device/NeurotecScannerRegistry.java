@@ -0,0 +1,76 @@
+package org.neurotecfinger.device;
+
+import com.neurotec.devices.NDevice;
+import com.neurotec.devices.NDeviceManager;
+import com.neurotec.devices.NDeviceType;
+import com.neurotec.devices.NFScanner;
+import com.neurotec.util.event.NCollectionChangeEvent;
+import com.neurotec.util.event.NCollectionChangeListener;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Scanners discovered by a single, long-lived {@link NDeviceManager}. The manager is initialized once at startup
+ * and the cached list is rebuilt on hot-plug events instead of re-enumerating devices on every scan.
+ */
+@Slf4j
+public class NeurotecScannerRegistry implements ScannerRegistry, AutoCloseable {
+
+    private final NDeviceManager deviceManager;
+
+    private volatile List<FingerScanner> scanners = Collections.emptyList();
+
+    public NeurotecScannerRegistry() {
+        deviceManager = new NDeviceManager();
+        deviceManager.setDeviceTypes(EnumSet.of(NDeviceType.FINGER_SCANNER));
+        deviceManager.setAutoPlug(true);
+        deviceManager.initialize();
+        deviceManager.getDevices().addCollectionChangeListener(new NCollectionChangeListener() {
+            @Override
+            public void collectionChanged(NCollectionChangeEvent event) {
+                rebuild();
+            }
+        });
+        rebuild();
+    }
+
+    private synchronized void rebuild() {
+        List<FingerScanner> found = new ArrayList<>();
+        for (NDevice device : deviceManager.getDevices()) {
+            if (device instanceof NFScanner) {
+                found.add(new NeurotecFingerScanner((NFScanner) device));
+            }
+        }
+        scanners = Collections.unmodifiableList(found);
+        log.info("Finger scanners available: {}", found.size());
+    }
+
+    @Override
+    public List<FingerScanner> getScanners() {
+        return scanners;
+    }
+
+    @Override
+    public Optional<FingerScanner> find(String scannerId) {
+        for (FingerScanner scanner : scanners) {
+            if (scanner.getId().equals(scannerId)) return Optional.of(scanner);
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public synchronized void refresh() {
+        deviceManager.refresh();
+        rebuild();
+    }
+
+    @Override
+    public void close() {
+        deviceManager.dispose();
+    }
+}
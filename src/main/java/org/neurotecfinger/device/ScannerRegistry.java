@@ -0,0 +1,20 @@
+package org.neurotecfinger.device;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Cached list of available finger scanners. Discovery happens once; implementations refresh the list
+ * themselves when devices are plugged or unplugged.
+ */
+public interface ScannerRegistry {
+
+    List<FingerScanner> getScanners();
+
+    Optional<FingerScanner> find(String scannerId);
+
+    /**
+     * Forces a new device discovery.
+     */
+    void refresh();
+}
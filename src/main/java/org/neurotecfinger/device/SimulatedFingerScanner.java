@@ -0,0 +1,58 @@
+package org.neurotecfinger.device;
+
+import com.neurotec.biometrics.NBiometricStatus;
+import com.neurotec.biometrics.NSubject;
+import com.neurotec.biometrics.client.NBiometricClient;
+import com.neurotec.images.NImage;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scanner stand-in that replays fingerprint image files in a loop, for tests and development without hardware.
+ */
+public class SimulatedFingerScanner implements FingerScanner {
+
+    private final String id;
+
+    private final List<Path> images;
+
+    private final long captureDelayMs;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    public SimulatedFingerScanner(String id, List<Path> images, long captureDelayMs) {
+        this.id = id;
+        this.images = images;
+        this.captureDelayMs = captureDelayMs;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Simulated scanner " + id;
+    }
+
+    @Override
+    public NBiometricStatus capture(NBiometricClient client, NSubject subject) {
+        if (images.isEmpty()) {
+            return NBiometricStatus.SOURCE_NOT_FOUND;
+        }
+        if (captureDelayMs > 0) {
+            try {
+                Thread.sleep(captureDelayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return NBiometricStatus.CANCELED;
+            }
+        }
+        Path image = images.get(Math.floorMod(next.getAndIncrement(), images.size()));
+        subject.getFingers().get(0).setImage(NImage.fromFile(image.toString()));
+        return NBiometricStatus.OK;
+    }
+}
@@ -0,0 +1,60 @@
+package org.neurotecfinger.device;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A fixed set of {@link SimulatedFingerScanner}s replaying the images of one directory.
+ */
+@Slf4j
+public class SimulatedScannerRegistry implements ScannerRegistry {
+
+    private final List<FingerScanner> scanners;
+
+    public SimulatedScannerRegistry(Path imageDirectory, int scannerCount, long captureDelayMs) {
+        List<Path> images = listImages(imageDirectory);
+        List<FingerScanner> created = new ArrayList<>();
+        for (int i = 1; i <= scannerCount; i++) {
+            created.add(new SimulatedFingerScanner("sim-" + i, images, captureDelayMs));
+        }
+        this.scanners = Collections.unmodifiableList(created);
+        log.info("Simulated scanners: {} replaying {} images from {}", scannerCount, images.size(), imageDirectory);
+    }
+
+    private static List<Path> listImages(Path directory) {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+                return name.endsWith(".png") || name.endsWith(".bmp") || name.endsWith(".jpg") || name.endsWith(".wsq");
+            }).sorted().collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read simulated scanner images from " + directory, e);
+        }
+    }
+
+    @Override
+    public List<FingerScanner> getScanners() {
+        return scanners;
+    }
+
+    @Override
+    public Optional<FingerScanner> find(String scannerId) {
+        return scanners.stream().filter(scanner -> scanner.getId().equals(scannerId)).findFirst();
+    }
+
+    @Override
+    public void refresh() {
+        // Fixed set, nothing to discover
+    }
+}
@@ -0,0 +1,156 @@
+package org.neurotecfinger.matching;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Gallery index partitioned by finger type. Each bucket is its own {@link IdentificationEngine}, so a probe with a
+ * finger type hint is matched against that bucket only, falling back to neighbouring fingers when nothing matches.
+ * <p>
+ * There is one bucket per known finger position plus {@link #OTHER}, which holds every record with a missing or
+ * unrecognised finger type, so the number of buckets (and of matchers behind them) does not grow with the input.
+ */
+public class FingerTypeIndex implements IdentificationEngine {
+
+    /**
+     * Bucket of records whose finger type is not one of the ten known positions.
+     */
+    public static final String OTHER = "other";
+
+    /**
+     * Most buckets an index can hold: the ten finger positions and {@link #OTHER}.
+     */
+    public static final int MAX_BUCKETS = 11;
+
+    private final Supplier<IdentificationEngine> bucketFactory;
+
+    private final Map<String, IdentificationEngine> buckets = new ConcurrentHashMap<>();
+
+    private final Map<Long, String> bucketById = new ConcurrentHashMap<>();
+
+    public FingerTypeIndex(Supplier<IdentificationEngine> bucketFactory) {
+        this.bucketFactory = bucketFactory;
+    }
+
+    private IdentificationEngine bucket(String key) {
+        return buckets.computeIfAbsent(key, k -> bucketFactory.get());
+    }
+
+    private static String bucketKey(String fingerType) {
+        String normalized = FingerTypes.normalize(fingerType);
+        return FingerTypes.isKnown(normalized) ? normalized : OTHER;
+    }
+
+    @Override
+    public void enroll(Collection<GalleryTemplate> templates) {
+        Map<String, List<GalleryTemplate>> grouped = new HashMap<>();
+        for (GalleryTemplate template : templates) {
+            grouped.computeIfAbsent(bucketKey(template.getFingerType()), key -> new ArrayList<>()).add(template);
+        }
+        for (Map.Entry<String, List<GalleryTemplate>> entry : grouped.entrySet()) {
+            bucket(entry.getKey()).enroll(entry.getValue());
+            for (GalleryTemplate template : entry.getValue()) {
+                bucketById.put(template.getId(), entry.getKey());
+            }
+        }
+    }
+
+    @Override
+    public void remove(long id) {
+        String key = bucketById.remove(id);
+        IdentificationEngine engine = key != null ? buckets.get(key) : null;
+        if (engine != null) {
+            engine.remove(id);
+        }
+    }
+
+    /**
+     * Matches against every bucket.
+     */
+    @Override
+    public List<MatchCandidate> identify(byte[] probeTemplate, IdentifyOptions options) {
+        return identifyIn(buckets.keySet(), probeTemplate, options);
+    }
+
+    /**
+     * Matches against the buckets of the given finger types only. If none of them yields a candidate, the
+     * neighbouring buckets are tried. An empty hint, or one containing an unknown finger type, searches everything.
+     */
+    public List<MatchCandidate> identify(byte[] probeTemplate, Collection<String> fingerTypes, IdentifyOptions options) {
+        Set<String> hinted = new LinkedHashSet<>();
+        if (fingerTypes != null) {
+            for (String fingerType : fingerTypes) {
+                String normalized = FingerTypes.normalize(fingerType);
+                if (!FingerTypes.isKnown(normalized)) {
+                    return identify(probeTemplate, options);
+                }
+                hinted.add(normalized);
+            }
+        }
+        if (hinted.isEmpty()) {
+            return identify(probeTemplate, options);
+        }
+
+        List<MatchCandidate> candidates = identifyIn(hinted, probeTemplate, options);
+        if (!candidates.isEmpty()) return candidates;
+
+        Set<String> neighbours = new LinkedHashSet<>();
+        for (String fingerType : hinted) {
+            neighbours.addAll(FingerTypes.neighboursOf(fingerType));
+        }
+        neighbours.removeAll(hinted);
+        return identifyIn(neighbours, probeTemplate, options);
+    }
+
+    private List<MatchCandidate> identifyIn(Collection<String> fingerTypes, byte[] probeTemplate, IdentifyOptions options) {
+        List<MatchCandidate> merged = new ArrayList<>();
+        for (String fingerType : fingerTypes) {
+            IdentificationEngine engine = buckets.get(fingerType);
+            if (engine == null || engine.size() == 0) continue;
+            merged.addAll(engine.identify(probeTemplate, options));
+        }
+        merged.sort(MatchCandidate.BEST_FIRST);
+        if (options.getMaxResults() > 0 && merged.size() > options.getMaxResults()) {
+            return new ArrayList<>(merged.subList(0, options.getMaxResults()));
+        }
+        return merged;
+    }
+
+    /**
+     * @return number of enrolled templates per finger type
+     */
+    public Map<String, Integer> bucketSizes() {
+        Map<String, Integer> sizes = new HashMap<>();
+        buckets.forEach((fingerType, engine) -> sizes.put(fingerType, engine.size()));
+        return sizes;
+    }
+
+    @Override
+    public int size() {
+        return bucketById.size();
+    }
+
+    @Override
+    public void clear() {
+        for (IdentificationEngine engine : buckets.values()) {
+            engine.clear();
+        }
+        bucketById.clear();
+    }
+
+    @Override
+    public void close() {
+        for (IdentificationEngine engine : buckets.values()) {
+            engine.close();
+        }
+        buckets.clear();
+        bucketById.clear();
+    }
+}
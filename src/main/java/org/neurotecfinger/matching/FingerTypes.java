@@ -0,0 +1,75 @@
+package org.neurotecfinger.matching;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finger type codes used by enrollment (e.g. "r_thumb") and the fallback neighbours used by identification.
+ */
+public final class FingerTypes {
+
+    private static final String[] FINGERS = { "thumb", "index", "middle", "ring", "little" };
+
+    private static final Map<String, Set<String>> NEIGHBOURS = new HashMap<>();
+
+    static {
+        String[] hands = { "r", "l" };
+        for (String hand : hands) {
+            String otherHand = hand.equals("r") ? "l" : "r";
+            for (int i = 0; i < FINGERS.length; i++) {
+                Set<String> neighbours = new LinkedHashSet<>();
+                // Adjacent fingers on the same hand are the usual mislabels, then the same finger on the other hand
+                if (i > 0) neighbours.add(hand + "_" + FINGERS[i - 1]);
+                if (i < FINGERS.length - 1) neighbours.add(hand + "_" + FINGERS[i + 1]);
+                neighbours.add(otherHand + "_" + FINGERS[i]);
+                NEIGHBOURS.put(hand + "_" + FINGERS[i], Collections.unmodifiableSet(neighbours));
+            }
+        }
+    }
+
+    private FingerTypes() {
+    }
+
+    public static String normalize(String fingerType) {
+        return fingerType == null ? "" : fingerType.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return whether the code is one of the ten known finger positions
+     */
+    public static boolean isKnown(String fingerType) {
+        return NEIGHBOURS.containsKey(normalize(fingerType));
+    }
+
+    public static Set<String> neighboursOf(String fingerType) {
+        return NEIGHBOURS.getOrDefault(normalize(fingerType), Collections.emptySet());
+    }
+
+    /**
+     * Reads the optional finger type hint of an identification request:
+     * "fingerType": "r_index" or "fingerTypes": ["r_index", "r_middle"] (or a comma separated string).
+     */
+    public static List<String> parseHint(Map<String, Object> payload) {
+        List<String> fingerTypes = new ArrayList<>();
+        for (String key : new String[] { "fingerType", "fingerTypes" }) {
+            Object value = payload.get(key);
+            if (value instanceof Collection) {
+                for (Object item : (Collection<?>) value) {
+                    if (item != null) fingerTypes.add(item.toString());
+                }
+            } else if (value instanceof String) {
+                for (String item : ((String) value).split(",")) {
+                    if (!item.isBlank()) fingerTypes.add(item.trim());
+                }
+            }
+        }
+        return fingerTypes;
+    }
+}
@@ -0,0 +1,207 @@
+package org.neurotecfinger.matching;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Versioned binary file holding every gallery template, so a restart can rebuild the gallery without reading the
+ * database.
+ * <p>
+ * Layout (big endian): a header of magic, version, the highest fingerprint id, the change feed sequence number and
+ * the time the database read started, and the record count; then one record per template: id, quality
+ * ({@link Integer#MIN_VALUE} for none), finger type (UTF-8, length-prefixed), template bytes (length-prefixed) and a
+ * CRC32 of the record. The file is memory-mapped for reading, in windows so it may exceed 2 GB, and records are
+ * checksummed straight from the mapping.
+ */
+public final class GallerySnapshot {
+
+    private static final int MAGIC = 0x46504753; // "FPGS"
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 8;
+
+    private static final int COUNT_OFFSET = HEADER_SIZE - 8;
+
+    private static final long MAP_WINDOW = 1L << 30;
+
+    private GallerySnapshot() {
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Header {
+
+        private final long maxId;
+
+        private final long changeSeq;
+
+        private final long readStartedAt;
+
+        private final long count;
+    }
+
+    /**
+     * Writes the snapshot next to {@code path} and moves it into place, so readers never see a partial file.
+     */
+    public static class Writer implements AutoCloseable {
+
+        private final Path path;
+
+        private final Path tempPath;
+
+        private final FileChannel channel;
+
+        private final CRC32 crc = new CRC32();
+
+        private long maxId;
+
+        private long count;
+
+        private boolean committed;
+
+        public Writer(Path path, long changeSeq, long readStartedAt) throws IOException {
+            this.path = path;
+            Path dir = path.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            this.tempPath = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+            this.channel = FileChannel.open(tempPath, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(0).putLong(changeSeq).putLong(readStartedAt).putLong(0);
+            header.flip();
+            writeFully(header);
+        }
+
+        public void write(GalleryTemplate template) throws IOException {
+            byte[] fingerType = template.getFingerType() != null ? template.getFingerType().getBytes(StandardCharsets.UTF_8) : new byte[0];
+            byte[] data = template.getTemplate();
+            ByteBuffer record = ByteBuffer.allocate(8 + 4 + 2 + fingerType.length + 4 + data.length + 4);
+            record.putLong(template.getId());
+            record.putInt(template.getQuality() != null ? template.getQuality() : Integer.MIN_VALUE);
+            record.putShort((short) fingerType.length).put(fingerType);
+            record.putInt(data.length).put(data);
+            crc.reset();
+            crc.update(record.array(), 0, record.position());
+            record.putInt((int) crc.getValue());
+            record.flip();
+            writeFully(record);
+            maxId = Math.max(maxId, template.getId());
+            count++;
+        }
+
+        /**
+         * @param maxId highest fingerprint id covered, including rows read but not written (e.g. without a template)
+         */
+        public void commit(long maxId) throws IOException {
+            ByteBuffer patch = ByteBuffer.allocate(8);
+            patch.putLong(Math.max(this.maxId, maxId)).flip();
+            channel.write(patch, 8);
+            patch.clear();
+            patch.putLong(count).flip();
+            channel.write(patch, COUNT_OFFSET);
+            channel.force(true);
+            channel.close();
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (committed) return;
+            channel.close();
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * Reads the snapshot and hands its templates to {@code sink} in batches of up to {@code batchSize}.
+     *
+     * @throws IOException if the file is not a snapshot of this version or a record fails its checksum; batches
+     *                     handed out before the failure must then be discarded by the caller
+     */
+    public static Header read(Path path, int batchSize, Consumer<List<GalleryTemplate>> sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) throw new IOException("Snapshot too short: " + path);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, MAP_WINDOW));
+            if (window.getInt() != MAGIC) throw new IOException("Not a gallery snapshot: " + path);
+            int version = window.getInt();
+            if (version != VERSION) throw new IOException("Unsupported gallery snapshot version " + version);
+            Header header = new Header(window.getLong(), window.getLong(), window.getLong(), window.getLong());
+
+            long windowStart = 0;
+            CRC32 crc = new CRC32();
+            List<GalleryTemplate> batch = new ArrayList<>(batchSize);
+            for (long i = 0; i < header.getCount(); i++) {
+                // Remap when the next record may cross the end of the current window
+                if (window.remaining() < 14 || window.remaining() < recordSize(window)) {
+                    long position = windowStart + window.position();
+                    if (position >= size) throw new IOException("Snapshot truncated after " + i + " records");
+                    windowStart = position;
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(size - windowStart, MAP_WINDOW));
+                    if (window.remaining() < 14 || window.remaining() < recordSize(window)) {
+                        throw new IOException("Snapshot truncated after " + i + " records");
+                    }
+                }
+                int start = window.position();
+                long id = window.getLong();
+                int quality = window.getInt();
+                byte[] fingerType = new byte[window.getShort() & 0xFFFF];
+                window.get(fingerType);
+                byte[] data = new byte[window.getInt()];
+                window.get(data);
+
+                ByteBuffer covered = window.duplicate();
+                covered.position(start).limit(window.position());
+                crc.reset();
+                crc.update(covered);
+                if (window.getInt() != (int) crc.getValue()) {
+                    throw new IOException("Snapshot checksum mismatch at record " + i + " (id " + id + ")");
+                }
+
+                batch.add(new GalleryTemplate(id, new String(fingerType, StandardCharsets.UTF_8),
+                        quality == Integer.MIN_VALUE ? null : quality, data));
+                if (batch.size() >= batchSize) {
+                    sink.accept(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) sink.accept(batch);
+            return header;
+        }
+    }
+
+    // Size of the record at the window position, without moving it; the fixed part must be readable
+    private static long recordSize(ByteBuffer window) {
+        int at = window.position();
+        int fingerTypeLength = window.getShort(at + 12) & 0xFFFF;
+        if (window.remaining() < 14 + fingerTypeLength + 4) return Long.MAX_VALUE;
+        int dataLength = window.getInt(at + 14 + fingerTypeLength);
+        if (dataLength < 0) return Long.MAX_VALUE;
+        return 14L + fingerTypeLength + 4 + dataLength + 4;
+    }
+}
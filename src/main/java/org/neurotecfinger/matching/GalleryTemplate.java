@@ -0,0 +1,21 @@
+package org.neurotecfinger.matching;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A decoded native template held in the in-memory gallery.
+ * The template bytes are decoded once when the record enters the gallery, never per identification.
+ */
+@Getter
+@AllArgsConstructor
+public class GalleryTemplate {
+
+    private final long id;
+
+    private final String fingerType;
+
+    private final Integer quality;
+
+    private final byte[] template;
+}
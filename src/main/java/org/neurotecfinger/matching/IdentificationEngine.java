@@ -0,0 +1,29 @@
+package org.neurotecfinger.matching;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 1:N identification over the whole in-memory gallery.
+ */
+public interface IdentificationEngine extends AutoCloseable {
+
+    void enroll(Collection<GalleryTemplate> templates);
+
+    void remove(long id);
+
+    /**
+     * @return up to {@link IdentifyOptions#getMaxResults()} candidates, best score first
+     */
+    List<MatchCandidate> identify(byte[] probeTemplate, IdentifyOptions options);
+
+    int size();
+
+    void clear();
+
+    /**
+     * Closes every matcher of the engine.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,28 @@
+package org.neurotecfinger.matching;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Per-call identification parameters.
+ */
+@Getter
+@AllArgsConstructor
+public class IdentifyOptions {
+
+    /** Maximum number of candidates returned after merging all shards. */
+    private final int maxResults;
+
+    /** A candidate scoring at or above this ends the search early; 0 disables early exit. */
+    private final int certaintyThreshold;
+
+    /** Lowest score returned for this call; null uses the matcher's configured threshold. */
+    private final Integer minScore;
+
+    /** Matching speed for this call; null uses the matcher's configured speed. */
+    private final MatchingSpeed speed;
+
+    public IdentifyOptions(int maxResults, int certaintyThreshold) {
+        this(maxResults, certaintyThreshold, null, null);
+    }
+}
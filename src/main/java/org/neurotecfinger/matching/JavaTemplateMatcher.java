@@ -0,0 +1,76 @@
+package org.neurotecfinger.matching;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pure-Java stand-in matcher that needs no Neurotec SDK or license.
+ * The score is the percentage of equal bytes between probe and reference, so an identical template scores 100.
+ * It is meant for tests and local development, not for real fingerprint comparison.
+ */
+public class JavaTemplateMatcher implements TemplateMatcher {
+
+    private final Map<Long, byte[]> gallery = new ConcurrentHashMap<>();
+
+    private final int threshold;
+
+    public JavaTemplateMatcher(int threshold) {
+        this.threshold = threshold;
+    }
+
+    public static int score(byte[] probe, byte[] reference) {
+        int length = Math.max(probe.length, reference.length);
+        if (length == 0) return 0;
+        int common = Math.min(probe.length, reference.length);
+        int equal = 0;
+        for (int i = 0; i < common; i++) {
+            if (probe[i] == reference[i]) equal++;
+        }
+        return (int) ((equal * 100L) / length);
+    }
+
+    @Override
+    public void enroll(Collection<GalleryTemplate> templates) {
+        for (GalleryTemplate template : templates) {
+            if (template.getTemplate() == null || template.getTemplate().length == 0) continue;
+            gallery.put(template.getId(), template.getTemplate());
+        }
+    }
+
+    @Override
+    public void remove(long id) {
+        gallery.remove(id);
+    }
+
+    // The speed option is ignored: byte comparison has no faster, less accurate mode
+    @Override
+    public List<MatchCandidate> identify(byte[] probeTemplate, IdentifyOptions options) {
+        int minScore = options.getMinScore() != null ? options.getMinScore() : threshold;
+        List<MatchCandidate> candidates = new ArrayList<>();
+        for (Map.Entry<Long, byte[]> entry : gallery.entrySet()) {
+            if (Thread.currentThread().isInterrupted()) break;
+            int score = score(probeTemplate, entry.getValue());
+            if (score >= minScore) {
+                candidates.add(new MatchCandidate(entry.getKey(), score));
+            }
+        }
+        candidates.sort(MatchCandidate.BEST_FIRST);
+        if (options.getMaxResults() > 0 && candidates.size() > options.getMaxResults()) {
+            return new ArrayList<>(candidates.subList(0, options.getMaxResults()));
+        }
+        return candidates;
+    }
+
+    @Override
+    public int size() {
+        return gallery.size();
+    }
+
+    @Override
+    public void clear() {
+        gallery.clear();
+    }
+}
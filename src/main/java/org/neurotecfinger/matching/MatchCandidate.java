@@ -0,0 +1,24 @@
+package org.neurotecfinger.matching;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Comparator;
+
+/**
+ * One gallery record returned by a matcher for a probe, with its matching score.
+ */
+@Getter
+@AllArgsConstructor
+public class MatchCandidate {
+
+    /**
+     * Highest score first; equal scores by ascending id, so merged results do not depend on which shard answered first.
+     */
+    public static final Comparator<MatchCandidate> BEST_FIRST =
+            Comparator.comparingInt(MatchCandidate::getScore).reversed().thenComparingLong(MatchCandidate::getId);
+
+    private final long id;
+
+    private final int score;
+}
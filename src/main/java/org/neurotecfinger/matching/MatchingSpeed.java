@@ -0,0 +1,23 @@
+package org.neurotecfinger.matching;
+
+import java.util.Locale;
+
+/**
+ * Matching speed requested for one identification. Faster modes trade some accuracy for throughput; the names follow
+ * the SDK's {@code NMatchingSpeed}.
+ */
+public enum MatchingSpeed {
+
+    LOW,
+    MEDIUM,
+    HIGH;
+
+    /**
+     * @return the speed for the given name (case-insensitive), or null when none is given
+     * @throws IllegalArgumentException for an unknown name
+     */
+    public static MatchingSpeed parse(String value) {
+        if (value == null || value.trim().isEmpty()) return null;
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,139 @@
+package org.neurotecfinger.matching;
+
+import com.neurotec.biometrics.NBiometricOperation;
+import com.neurotec.biometrics.NBiometricStatus;
+import com.neurotec.biometrics.NBiometricTask;
+import com.neurotec.biometrics.NMatchingResult;
+import com.neurotec.biometrics.NMatchingSpeed;
+import com.neurotec.biometrics.NSubject;
+import com.neurotec.biometrics.client.NBiometricClient;
+import com.neurotec.io.NBuffer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Matcher backed by the in-memory gallery of an {@link NBiometricClient}.
+ * Templates stay enrolled in the client between identifications instead of being re-enrolled and cleared per call.
+ */
+@Slf4j
+public class NeurotecTemplateMatcher implements TemplateMatcher {
+
+    private final NBiometricClient client;
+
+    private final Set<Long> enrolledIds = new HashSet<>();
+
+    private boolean closed;
+
+    public NeurotecTemplateMatcher(NBiometricClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public synchronized void enroll(Collection<GalleryTemplate> templates) {
+        if (templates.isEmpty()) return;
+        NBiometricTask enrollTask = client.createTask(EnumSet.of(NBiometricOperation.ENROLL), null);
+        List<NSubject> subjects = new ArrayList<>(templates.size());
+        List<Long> ids = new ArrayList<>(templates.size());
+        try {
+            for (GalleryTemplate template : templates) {
+                if (template.getTemplate() == null || template.getTemplate().length == 0) continue;
+                if (enrolledIds.contains(template.getId())) continue;
+                NSubject candidate = new NSubject();
+                candidate.setId(String.valueOf(template.getId())); // ID is key
+                candidate.setTemplateBuffer(new NBuffer(template.getTemplate()));
+                enrollTask.getSubjects().add(candidate);
+                subjects.add(candidate);
+                ids.add(template.getId());
+            }
+            if (subjects.isEmpty()) return;
+            client.performTask(enrollTask);
+            if (enrollTask.getStatus() == NBiometricStatus.OK) {
+                enrolledIds.addAll(ids);
+            } else {
+                log.warn("Gallery enroll failed: {}", enrollTask.getStatus());
+            }
+        } finally {
+            for (NSubject subject : subjects) {
+                subject.dispose();
+            }
+            enrollTask.dispose();
+        }
+    }
+
+    @Override
+    public synchronized void remove(long id) {
+        if (!enrolledIds.remove(id)) return;
+        NSubject subject = new NSubject();
+        subject.setId(String.valueOf(id));
+        NBiometricTask deleteTask = client.createTask(EnumSet.of(NBiometricOperation.DELETE), subject);
+        try {
+            client.performTask(deleteTask);
+            if (deleteTask.getStatus() != NBiometricStatus.OK) {
+                log.warn("Gallery delete failed for {}: {}", id, deleteTask.getStatus());
+            }
+        } finally {
+            subject.dispose();
+            deleteTask.dispose();
+        }
+    }
+
+    @Override
+    public synchronized List<MatchCandidate> identify(byte[] probeTemplate, IdentifyOptions options) {
+        List<MatchCandidate> candidates = new ArrayList<>();
+        if (enrolledIds.isEmpty()) return candidates;
+
+        NSubject probe = new NSubject();
+        probe.setTemplateBuffer(new NBuffer(probeTemplate));
+        NBiometricTask identifyTask = client.createTask(EnumSet.of(NBiometricOperation.IDENTIFY), probe);
+        // Per-call parameters are set on the shared client under this matcher's lock and restored afterwards
+        int threshold = client.getMatchingThreshold();
+        NMatchingSpeed speed = client.getFingersMatchingSpeed();
+        int maxResultCount = client.getMatchingMaximalResultCount();
+        try {
+            if (options.getMinScore() != null) client.setMatchingThreshold(options.getMinScore());
+            if (options.getSpeed() != null) client.setFingersMatchingSpeed(NMatchingSpeed.valueOf(options.getSpeed().name()));
+            if (options.getMaxResults() > 0) client.setMatchingMaximalResultCount(options.getMaxResults());
+            client.performTask(identifyTask);
+            if (identifyTask.getStatus() == NBiometricStatus.OK) {
+                for (NMatchingResult result : probe.getMatchingResults()) {
+                    candidates.add(new MatchCandidate(Long.parseLong(result.getId()), result.getScore()));
+                }
+            } else if (identifyTask.getStatus() != NBiometricStatus.MATCH_NOT_FOUND) {
+                log.warn("Nbiometrics status not OK: {}", identifyTask.getStatus());
+            }
+        } finally {
+            client.setMatchingThreshold(threshold);
+            client.setFingersMatchingSpeed(speed);
+            client.setMatchingMaximalResultCount(maxResultCount);
+            probe.dispose();
+            identifyTask.dispose();
+        }
+        candidates.sort(MatchCandidate.BEST_FIRST);
+        return candidates;
+    }
+
+    @Override
+    public synchronized int size() {
+        return enrolledIds.size();
+    }
+
+    @Override
+    public synchronized void clear() {
+        client.clear();
+        enrolledIds.clear();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        enrolledIds.clear();
+        client.dispose();
+    }
+}
@@ -0,0 +1,62 @@
+package org.neurotecfinger.matching;
+
+import com.neurotec.biometrics.NBiometricStatus;
+import com.neurotec.biometrics.NMatchingResult;
+import com.neurotec.biometrics.NSubject;
+import com.neurotec.biometrics.client.NBiometricClient;
+import com.neurotec.io.NBuffer;
+import lombok.extern.slf4j.Slf4j;
+import org.neurotecfinger.pool.EnginePool;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Verifies with clients borrowed from the matching pool. The client's matching threshold still applies: the SDK
+ * reports no score for a pair below it, which shows up here as a score of 0.
+ */
+@Slf4j
+public class NeurotecTemplateVerifier implements TemplateVerifier {
+
+    private final EnginePool<NBiometricClient> pool;
+
+    public NeurotecTemplateVerifier(EnginePool<NBiometricClient> pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public List<MatchCandidate> verify(byte[] probeTemplate, Collection<GalleryTemplate> references) throws Exception {
+        return pool.execute(client -> {
+            List<MatchCandidate> results = new ArrayList<>(references.size());
+            for (GalleryTemplate reference : references) {
+                results.add(new MatchCandidate(reference.getId(), verify(client, probeTemplate, reference)));
+            }
+            return results;
+        });
+    }
+
+    private int verify(NBiometricClient client, byte[] probeTemplate, GalleryTemplate reference) {
+        // Fresh subjects per pair so matching results never carry over between references
+        NSubject probe = new NSubject();
+        probe.setTemplateBuffer(new NBuffer(probeTemplate));
+        NSubject candidate = new NSubject();
+        candidate.setId(String.valueOf(reference.getId()));
+        candidate.setTemplateBuffer(new NBuffer(reference.getTemplate()));
+        try {
+            NBiometricStatus status = client.verify(probe, candidate);
+            if (status != NBiometricStatus.OK && status != NBiometricStatus.MATCH_NOT_FOUND) {
+                log.warn("Verification against {} failed: {}", reference.getId(), status);
+                return 0;
+            }
+            int score = 0;
+            for (NMatchingResult result : probe.getMatchingResults()) {
+                score = Math.max(score, result.getScore());
+            }
+            return score;
+        } finally {
+            probe.dispose();
+            candidate.dispose();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.neurotecfinger.matching;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Splits the gallery into a fixed number of shards, each held by its own {@link TemplateMatcher},
+ * and matches a probe against all shards in parallel. Shard results are merged into a single top-k list.
+ */
+public class ShardedIdentificationEngine implements IdentificationEngine {
+
+    private final List<TemplateMatcher> shards;
+
+    private final ExecutorService executor;
+
+    /**
+     * @param executor pool the shards are matched on; it is owned by the caller and may be shared between engines
+     */
+    public ShardedIdentificationEngine(TemplateMatcherFactory factory, int shardCount, ExecutorService executor) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount must be at least 1");
+        }
+        this.shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(factory.create());
+        }
+        this.executor = executor;
+    }
+
+    private TemplateMatcher shardFor(long id) {
+        return shards.get(Math.floorMod(Long.hashCode(id), shards.size()));
+    }
+
+    @Override
+    public void enroll(Collection<GalleryTemplate> templates) {
+        List<List<GalleryTemplate>> perShard = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            perShard.add(new ArrayList<>());
+        }
+        for (GalleryTemplate template : templates) {
+            perShard.get(Math.floorMod(Long.hashCode(template.getId()), shards.size())).add(template);
+        }
+        List<Future<?>> futures = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            List<GalleryTemplate> batch = perShard.get(i);
+            if (batch.isEmpty()) continue;
+            TemplateMatcher shard = shards.get(i);
+            futures.add(executor.submit(() -> shard.enroll(batch)));
+        }
+        awaitAll(futures);
+    }
+
+    @Override
+    public void remove(long id) {
+        shardFor(id).remove(id);
+    }
+
+    @Override
+    public List<MatchCandidate> identify(byte[] probeTemplate, IdentifyOptions options) {
+        List<MatchCandidate> merged = new ArrayList<>();
+        if (shards.size() == 1) {
+            merged.addAll(shards.get(0).identify(probeTemplate, options));
+            return topK(merged, options.getMaxResults());
+        }
+
+        CompletionService<List<MatchCandidate>> completion = new ExecutorCompletionService<>(executor);
+        List<Future<List<MatchCandidate>>> futures = new ArrayList<>(shards.size());
+        for (TemplateMatcher shard : shards) {
+            if (shard.size() == 0) continue;
+            futures.add(completion.submit(() -> shard.identify(probeTemplate, options)));
+        }
+        try {
+            for (int received = 0; received < futures.size(); received++) {
+                List<MatchCandidate> shardResult = completion.take().get();
+                merged.addAll(shardResult);
+                if (isCertain(shardResult, options.getCertaintyThreshold())) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Identification interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Shard identification failed", e.getCause());
+        } finally {
+            cancelRemaining(futures);
+        }
+        return topK(merged, options.getMaxResults());
+    }
+
+    private static boolean isCertain(List<MatchCandidate> candidates, int certaintyThreshold) {
+        if (certaintyThreshold <= 0) return false;
+        for (MatchCandidate candidate : candidates) {
+            if (candidate.getScore() >= certaintyThreshold) return true;
+        }
+        return false;
+    }
+
+    // Interrupts shards that are still matching. Native matching ignores interrupts and simply finishes in the
+    // background; its client is shared with other requests, so it is never cancelled from here.
+    private static void cancelRemaining(List<Future<List<MatchCandidate>>> futures) {
+        for (Future<List<MatchCandidate>> future : futures) {
+            if (!future.isDone()) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static List<MatchCandidate> topK(List<MatchCandidate> candidates, int maxResults) {
+        candidates.sort(MatchCandidate.BEST_FIRST);
+        if (maxResults > 0 && candidates.size() > maxResults) {
+            return new ArrayList<>(candidates.subList(0, maxResults));
+        }
+        return candidates;
+    }
+
+    private static void awaitAll(List<Future<?>> futures) {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Gallery enroll interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Gallery enroll failed", e.getCause());
+        }
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (TemplateMatcher shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for (TemplateMatcher shard : shards) {
+            shard.clear();
+        }
+    }
+
+    // The executor belongs to the caller and stays open
+    @Override
+    public void close() {
+        for (TemplateMatcher shard : shards) {
+            shard.close();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.neurotecfinger.matching;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A long-lived gallery of native templates that probes can be identified against.
+ * Implementations keep their enrolled templates between calls, so callers only enroll new records.
+ */
+public interface TemplateMatcher extends AutoCloseable {
+
+    /**
+     * Adds the given templates to the gallery.
+     */
+    void enroll(Collection<GalleryTemplate> templates);
+
+    /**
+     * Removes a single record from the gallery, if present.
+     */
+    void remove(long id);
+
+    /**
+     * Matches the probe against every enrolled template. The threshold, speed and result count of the options
+     * apply to this call only.
+     *
+     * @return up to {@link IdentifyOptions#getMaxResults()} candidates at or above the matching threshold,
+     *         best score first
+     */
+    List<MatchCandidate> identify(byte[] probeTemplate, IdentifyOptions options);
+
+    int size();
+
+    void clear();
+
+    /**
+     * Releases the gallery and any native client behind it; the matcher is not used afterwards.
+     */
+    @Override
+    default void close() {
+    }
+}
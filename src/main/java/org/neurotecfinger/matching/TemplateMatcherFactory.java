@@ -0,0 +1,10 @@
+package org.neurotecfinger.matching;
+
+/**
+ * Creates independent matcher instances, one per gallery shard.
+ */
+@FunctionalInterface
+public interface TemplateMatcherFactory {
+
+    TemplateMatcher create();
+}
@@ -0,0 +1,16 @@
+package org.neurotecfinger.matching;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 1:1 comparison of a probe against a few known references, without touching the identification gallery.
+ */
+@FunctionalInterface
+public interface TemplateVerifier {
+
+    /**
+     * @return one candidate per reference with its score (0 when the matcher reports none), in reference order
+     */
+    List<MatchCandidate> verify(byte[] probeTemplate, Collection<GalleryTemplate> references) throws Exception;
+}
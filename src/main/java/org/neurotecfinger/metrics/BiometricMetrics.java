@@ -0,0 +1,91 @@
+package org.neurotecfinger.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Times biometric stages. Every stage records a {@code biometric.stage} timer with a percentile histogram and
+ * runs as a log span: the {@code stage} and {@code traceId} MDC keys are set while it runs and its duration is
+ * logged at DEBUG, so log lines of one scan or identification can be correlated without console I/O on the hot path.
+ */
+@Slf4j
+@Component
+public class BiometricMetrics {
+
+    public static final String TRACE_ID = "traceId";
+
+    public static final String STAGE = "stage";
+
+    private final Map<BiometricStage, Timer> timers = new EnumMap<>(BiometricStage.class);
+
+    public BiometricMetrics(MeterRegistry registry) {
+        for (BiometricStage stage : BiometricStage.values()) {
+            timers.put(stage, Timer.builder("biometric.stage")
+                    .description("Duration of a biometric processing stage")
+                    .tag("stage", stage.getTag())
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+    }
+
+    public <T> T time(BiometricStage stage, Callable<T> work) throws Exception {
+        String parentStage = MDC.get(STAGE);
+        boolean newTrace = MDC.get(TRACE_ID) == null;
+        if (newTrace) MDC.put(TRACE_ID, UUID.randomUUID().toString());
+        MDC.put(STAGE, stage.getTag());
+        long start = System.nanoTime();
+        try {
+            return work.call();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            timers.get(stage).record(elapsed, TimeUnit.NANOSECONDS);
+            log.debug("stage={} durationMs={}", stage.getTag(), elapsed / 1_000_000.0);
+            if (parentStage != null) MDC.put(STAGE, parentStage); else MDC.remove(STAGE);
+            if (newTrace) MDC.remove(TRACE_ID);
+        }
+    }
+
+    public <T> T timeUnchecked(BiometricStage stage, Supplier<T> work) {
+        try {
+            return time(stage, work::get);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // Supplier cannot throw checked exceptions
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void record(BiometricStage stage, Runnable work) {
+        timeUnchecked(stage, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Wraps a task submitted to another thread so it joins the submitting thread's trace.
+     */
+    public <T> Callable<T> inCurrentTrace(Callable<T> task) {
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        return () -> {
+            Map<String, String> previous = MDC.getCopyOfContextMap();
+            if (context != null) MDC.setContextMap(context); else MDC.clear();
+            try {
+                return task.call();
+            } finally {
+                if (previous != null) MDC.setContextMap(previous); else MDC.clear();
+            }
+        };
+    }
+}
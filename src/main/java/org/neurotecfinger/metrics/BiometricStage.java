@@ -0,0 +1,28 @@
+package org.neurotecfinger.metrics;
+
+/**
+ * Timed stages of capture, enrollment, identification and verification. Each one is a {@code biometric.stage} timer tag.
+ */
+public enum BiometricStage {
+
+    DEVICE_SELECTION("device_selection"),
+    CAPTURE("capture"),
+    PNG_ENCODE("png_encode"),
+    WSQ_ENCODE("wsq_encode"),
+    TEMPLATE_EXTRACTION("template_extraction"),
+    GALLERY_LOAD("gallery_load"),
+    ENROLL("enroll"),
+    IDENTIFY("identify"),
+    VERIFY("verify"),
+    DB_SAVE("db_save");
+
+    private final String tag;
+
+    BiometricStage(String tag) {
+        this.tag = tag;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+}
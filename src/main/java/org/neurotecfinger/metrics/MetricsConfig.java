@@ -0,0 +1,87 @@
+package org.neurotecfinger.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.neurotecfinger.pool.BiometricEnginePools;
+import org.neurotecfinger.pool.BiometricRole;
+import org.neurotecfinger.pool.EnginePool;
+import org.neurotecfinger.service.FingerprintGallery;
+import org.neurotecfinger.service.FingerprintImageService;
+import org.neurotecfinger.service.FingerprintWriter;
+import org.neurotecfinger.service.ProbeResultCache;
+import org.neurotecfinger.service.ScannerService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Gauges for gallery size, scanner state, client pool usage, the probe result cache, thumbnails and the write-behind
+ * queue, exported through Actuator/Prometheus.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Autowired
+    private FingerprintGallery gallery;
+
+    @Autowired
+    private ScannerService scannerService;
+
+    @Autowired
+    private BiometricEnginePools<?> enginePools;
+
+    @Autowired
+    private ProbeResultCache resultCache;
+
+    @Autowired
+    private FingerprintWriter fingerprintWriter;
+
+    @Autowired
+    private FingerprintImageService imageService;
+
+    @PostConstruct
+    public void registerGauges() {
+        Gauge.builder("biometric.gallery.size", gallery, FingerprintGallery::size)
+                .description("Templates in the in-memory identification gallery")
+                .register(registry);
+        CaffeineCacheMetrics.monitor(registry, resultCache.getCache(), "identify-probe-results");
+        CaffeineCacheMetrics.monitor(registry, imageService.getThumbnailCache(), "fingerprint-thumbnails");
+        Gauge.builder("biometric.persist.queue.depth", fingerprintWriter, FingerprintWriter::queueDepth)
+                .description("Fingerprints accepted but not yet committed to the database")
+                .register(registry);
+        FunctionCounter.builder("biometric.persist.rejected", fingerprintWriter, FingerprintWriter::rejectedCount)
+                .description("Queued fingerprints dropped because the database refused them")
+                .register(registry);
+        Gauge.builder("biometric.scanners.busy", scannerService, ScannerService::busyScannerCount)
+                .description("Scanners currently capturing")
+                .register(registry);
+
+        for (BiometricRole role : BiometricRole.values()) {
+            EnginePool<?> pool = enginePools.get(role);
+            String tag = pool.getName();
+            Gauge.builder("biometric.pool.borrowed", pool, EnginePool::getBorrowedCount)
+                    .tag("role", tag)
+                    .description("Biometric clients currently borrowed")
+                    .register(registry);
+            Gauge.builder("biometric.pool.max", pool, EnginePool::getMaxSize)
+                    .tag("role", tag)
+                    .register(registry);
+            FunctionCounter.builder("biometric.pool.borrows", pool, EnginePool::getBorrowCount)
+                    .tag("role", tag)
+                    .register(registry);
+            FunctionCounter.builder("biometric.pool.wait.seconds", pool, p -> p.getTotalWaitNanos() / 1e9)
+                    .tag("role", tag)
+                    .description("Total time spent waiting to borrow a client")
+                    .register(registry);
+            FunctionCounter.builder("biometric.pool.timeouts", pool, EnginePool::getTimeoutCount)
+                    .tag("role", tag)
+                    .register(registry);
+        }
+    }
+}
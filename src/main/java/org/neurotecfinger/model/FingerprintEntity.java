@@ -6,46 +6,61 @@ import java.time.LocalDateTime;
 
 import com.fasterxml.jackson.annotation.ObjectIdGenerators;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import org.hibernate.annotations.Type;
+import org.springframework.data.domain.Persistable;
 
 @Getter
 @Setter
 @Entity
+// created_at is queried to catch up rows committed after the gallery snapshot was taken
+@Table(indexes = @Index(name = "fingerprint_entity_created_at", columnList = "created_at"))
 @JsonIdentityInfo(generator = ObjectIdGenerators.PropertyGenerator.class, property = "id")
-public class FingerprintEntity {
+public class FingerprintEntity implements Persistable<Long> {
 
+    // Assigned from FingerprintIdAllocator before saving, so inserts can be JDBC-batched
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    private long id;
+    private Long id;
 
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private boolean persisted;
 
-    private String fingerType;
 
+    private String fingerType;
 
-    @Lob
-    @Type(type = "org.hibernate.type.TextType") // <--- ADD THIS
-    private String bmpBase64;
 
     private Integer quality;
 
-    @Lob
-    @Type(type = "org.hibernate.type.TextType") // <--- ADD THIS
-    private String wsqData;
+    // PNG and WSQ payloads live in FingerprintImage so template reads stay small
 
-    // The mathematical template extracted by Neurotec (Crucial for matching)
-    @Lob
-    @Type(type = "org.hibernate.type.TextType") // <--- ADD THIS
-    @Column(name = "native_template", nullable = false)
-    private String nativeTemplate;
+    // The mathematical template extracted by Neurotec (Crucial for matching), stored as raw bytea
+    @Type(type = "org.hibernate.type.BinaryType")
+    @Column(name = "native_template", nullable = false, columnDefinition = "bytea")
+    private byte[] nativeTemplate;
 
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
     @PrePersist
     protected void onCreate() {
-        createdAt = LocalDateTime.now();
+        // Kept when set at capture time: the write-behind insert can happen well after that
+        if (createdAt == null) createdAt = LocalDateTime.now();
+    }
+
+    @PostPersist
+    @PostLoad
+    protected void markPersisted() {
+        persisted = true;
+    }
+
+    // Ids are assigned, so Spring Data cannot tell new rows by a null id; avoids a SELECT-before-INSERT merge
+    @Override
+    public boolean isNew() {
+        return !persisted;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,35 @@
+package org.neurotecfinger.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.Type;
+
+import javax.persistence.*;
+
+/**
+ * Image payloads of a fingerprint record, kept out of {@link FingerprintEntity} so that
+ * template reads never pull the PNG and WSQ blobs. Shares the primary key of its fingerprint.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "fingerprint_image")
+public class FingerprintImage {
+
+    @Id
+    private Long id;
+
+    @MapsId
+    @OneToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "fingerprint_id")
+    private FingerprintEntity fingerprint;
+
+    // PNG bytes (returned as "BMPBase64" by the legacy API)
+    @Type(type = "org.hibernate.type.BinaryType")
+    @Column(name = "image_data", columnDefinition = "bytea")
+    private byte[] imageData;
+
+    @Type(type = "org.hibernate.type.BinaryType")
+    @Column(name = "wsq_data", columnDefinition = "bytea")
+    private byte[] wsqData;
+}
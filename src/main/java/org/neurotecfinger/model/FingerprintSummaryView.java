@@ -0,0 +1,17 @@
+package org.neurotecfinger.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Metadata-only projection of {@link FingerprintEntity} returned with identification candidates.
+ */
+public interface FingerprintSummaryView {
+
+    long getId();
+
+    String getFingerType();
+
+    Integer getQuality();
+
+    LocalDateTime getCreatedAt();
+}
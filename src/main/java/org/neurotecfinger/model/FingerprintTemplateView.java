@@ -0,0 +1,15 @@
+package org.neurotecfinger.model;
+
+/**
+ * Template-only projection of {@link FingerprintEntity} used to build the identification gallery.
+ */
+public interface FingerprintTemplateView {
+
+    long getId();
+
+    String getFingerType();
+
+    Integer getQuality();
+
+    byte[] getNativeTemplate();
+}
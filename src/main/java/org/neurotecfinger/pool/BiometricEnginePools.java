@@ -0,0 +1,37 @@
+package org.neurotecfinger.pool;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * One {@link EnginePool} per {@link BiometricRole}, so slow captures never starve extraction or matching.
+ */
+public class BiometricEnginePools<E> implements AutoCloseable {
+
+    private final Map<BiometricRole, EnginePool<E>> pools = new EnumMap<>(BiometricRole.class);
+
+    public BiometricEnginePools(Function<BiometricRole, EngineFactory<E>> factories, Map<BiometricRole, Integer> sizes,
+                                long borrowTimeoutMs) {
+        for (BiometricRole role : BiometricRole.values()) {
+            int size = sizes.getOrDefault(role, 1);
+            pools.put(role, new EnginePool<>(role.name().toLowerCase(), factories.apply(role), size, borrowTimeoutMs));
+        }
+    }
+
+    public EnginePool<E> get(BiometricRole role) {
+        return pools.get(role);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        pools.forEach((role, pool) -> stats.put(pool.getName(), pool.stats()));
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        pools.values().forEach(EnginePool::close);
+    }
+}
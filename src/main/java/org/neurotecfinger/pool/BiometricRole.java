@@ -0,0 +1,16 @@
+package org.neurotecfinger.pool;
+
+/**
+ * What a pooled biometric engine is used for. Each role has its own pool and size.
+ */
+public enum BiometricRole {
+
+    /** Live capture from a finger scanner, followed by extraction of the captured subject. */
+    CAPTURE,
+
+    /** Template extraction from stored or uploaded images. */
+    EXTRACTION,
+
+    /** Ad-hoc matching outside the resident identification gallery. */
+    MATCHING
+}
@@ -0,0 +1,11 @@
+package org.neurotecfinger.pool;
+
+/**
+ * Creates and disposes the engines held by an {@link EnginePool}.
+ */
+public interface EngineFactory<E> {
+
+    E create();
+
+    void destroy(E engine);
+}
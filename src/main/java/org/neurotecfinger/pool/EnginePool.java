@@ -0,0 +1,210 @@
+package org.neurotecfinger.pool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Bounded pool of engines with borrow/return semantics. Engines are created lazily up to {@code maxSize}
+ * and reused afterwards; a borrower waits at most {@code borrowTimeoutMs} for one to become free.
+ * <p>
+ * {@link #close} destroys the idle engines at once and every borrowed one when it is released or invalidated, so
+ * each engine the pool created is destroyed exactly once. Borrowing from a closed pool fails.
+ */
+public class EnginePool<E> implements AutoCloseable {
+
+    private final String name;
+
+    private final EngineFactory<E> factory;
+
+    private final int maxSize;
+
+    private final long borrowTimeoutMs;
+
+    private final Semaphore permits;
+
+    private final BlockingQueue<E> idle = new LinkedBlockingQueue<>();
+
+    private final Set<E> borrowed = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    // Every engine created and not destroyed yet, idle or borrowed; guarded by this
+    private final Set<E> engines = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // Guarded by this
+    private boolean closed;
+
+    private final AtomicLong borrows = new AtomicLong();
+
+    private final AtomicLong timeouts = new AtomicLong();
+
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public EnginePool(String name, EngineFactory<E> factory, int maxSize, long borrowTimeoutMs) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool '" + name + "' needs at least one engine");
+        }
+        this.name = name;
+        this.factory = factory;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    public E borrow() throws InterruptedException {
+        long start = System.nanoTime();
+        boolean acquired = permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS);
+        long waited = System.nanoTime() - start;
+        totalWaitNanos.addAndGet(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        if (!acquired) {
+            timeouts.incrementAndGet();
+            throw new RuntimeException("No free biometric engine in pool '" + name + "' after " + borrowTimeoutMs + " ms");
+        }
+        E engine = idle.poll();
+        if (engine == null) {
+            // Created outside the lock: building an SDK client is slow
+            try {
+                engine = factory.create();
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+        synchronized (this) {
+            if (!closed) {
+                engines.add(engine);
+                borrowed.add(engine);
+                borrows.incrementAndGet();
+                return engine;
+            }
+            engines.remove(engine);
+        }
+        permits.release();
+        factory.destroy(engine);
+        throw new IllegalStateException("Pool '" + name + "' is closed");
+    }
+
+    public void release(E engine) {
+        if (engine == null) return;
+        boolean destroy;
+        synchronized (this) {
+            if (!borrowed.remove(engine)) return;
+            destroy = closed;
+            if (destroy) {
+                engines.remove(engine);
+            } else {
+                idle.offer(engine);
+            }
+        }
+        permits.release();
+        if (destroy) {
+            factory.destroy(engine);
+        }
+    }
+
+    /**
+     * Returns a broken engine without reusing it; a fresh one is created on a later borrow.
+     */
+    public void invalidate(E engine) {
+        if (engine == null) return;
+        synchronized (this) {
+            if (!borrowed.remove(engine)) return;
+            engines.remove(engine);
+        }
+        permits.release();
+        factory.destroy(engine);
+    }
+
+    public <T> T execute(EngineTask<E, T> task) throws Exception {
+        E engine = borrow();
+        try {
+            return task.run(engine);
+        } finally {
+            release(engine);
+        }
+    }
+
+    /**
+     * Applies the action to every engine currently borrowed, e.g. to cancel their running operations.
+     */
+    public void forEachBorrowed(Consumer<E> action) {
+        List<E> snapshot;
+        synchronized (borrowed) {
+            snapshot = new ArrayList<>(borrowed);
+        }
+        snapshot.forEach(action);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return engines created and not destroyed yet
+     */
+    public synchronized int getCreatedCount() {
+        return engines.size();
+    }
+
+    public int getBorrowedCount() {
+        return borrowed.size();
+    }
+
+    public long getBorrowCount() {
+        return borrows.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    public long getTotalWaitNanos() {
+        return totalWaitNanos.get();
+    }
+
+    public Map<String, Object> stats() {
+        long borrowCount = borrows.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxSize", maxSize);
+        stats.put("created", getCreatedCount());
+        stats.put("borrowed", borrowed.size());
+        stats.put("idle", idle.size());
+        stats.put("waiting", permits.getQueueLength());
+        stats.put("borrows", borrowCount);
+        stats.put("timeouts", timeouts.get());
+        stats.put("avgWaitMs", borrowCount > 0 ? totalWaitNanos.get() / 1_000_000.0 / borrowCount : 0.0);
+        stats.put("maxWaitMs", maxWaitNanos.get() / 1_000_000.0);
+        return stats;
+    }
+
+    /**
+     * Destroys the idle engines; engines still borrowed are destroyed when they come back.
+     */
+    @Override
+    public void close() {
+        List<E> destroyed = new ArrayList<>();
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            idle.drainTo(destroyed);
+            destroyed.forEach(engines::remove);
+        }
+        destroyed.forEach(factory::destroy);
+    }
+}
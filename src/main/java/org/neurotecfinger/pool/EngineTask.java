@@ -0,0 +1,10 @@
+package org.neurotecfinger.pool;
+
+/**
+ * Work done with a borrowed engine, see {@link EnginePool#execute(EngineTask)}.
+ */
+@FunctionalInterface
+public interface EngineTask<E, T> {
+
+    T run(E engine) throws Exception;
+}
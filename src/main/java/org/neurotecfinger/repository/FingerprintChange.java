@@ -0,0 +1,24 @@
+package org.neurotecfinger.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * One row of the {@code fingerprint_change} feed.
+ */
+@Getter
+@AllArgsConstructor
+public class FingerprintChange {
+
+    public static final char INSERT = 'I';
+
+    public static final char UPDATE = 'U';
+
+    public static final char DELETE = 'D';
+
+    private final long seq;
+
+    private final long fingerprintId;
+
+    private final char operation;
+}
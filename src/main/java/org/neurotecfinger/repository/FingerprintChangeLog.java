@@ -0,0 +1,60 @@
+package org.neurotecfinger.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the {@code fingerprint_change} feed written by the trigger of {@code db/migrate-003-fingerprint-change-feed.sql}.
+ * Sequence numbers are assigned when a change is made but become visible when its transaction commits, so readers
+ * must expect a lower number to show up after a higher one.
+ */
+@Component
+@ConditionalOnProperty(name = "biometric.gallery.sync.enabled", havingValue = "true")
+public class FingerprintChangeLog {
+
+    public static final String CHANNEL = "fingerprint_change";
+
+    private static final RowMapper<FingerprintChange> ROW_MAPPER = (rs, rowNum) ->
+            new FingerprintChange(rs.getLong("seq"), rs.getLong("fingerprint_id"), rs.getString("operation").charAt(0));
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    /**
+     * Highest sequence number recorded more than {@code settleTime} ago. Transactions still open past that age
+     * are not expected, so every lower number is either visible by now or will never be.
+     */
+    public long settledSeq(Duration settleTime) {
+        Long seq = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(seq), 0) FROM fingerprint_change WHERE changed_at < ?",
+                Long.class, Timestamp.from(Instant.now().minus(settleTime)));
+        return seq != null ? seq : 0;
+    }
+
+    public List<FingerprintChange> changesAfter(long seq, int limit) {
+        return jdbcTemplate.query("SELECT seq, fingerprint_id, operation FROM fingerprint_change WHERE seq > ? ORDER BY seq LIMIT ?",
+                ROW_MAPPER, seq, limit);
+    }
+
+    public List<FingerprintChange> changesIn(Collection<Long> seqs) {
+        return namedJdbcTemplate.query("SELECT seq, fingerprint_id, operation FROM fingerprint_change WHERE seq IN (:seqs) ORDER BY seq",
+                Collections.singletonMap("seqs", seqs), ROW_MAPPER);
+    }
+
+    public int deleteOlderThan(Instant cutoff) {
+        return jdbcTemplate.update("DELETE FROM fingerprint_change WHERE changed_at < ?", Timestamp.from(cutoff));
+    }
+}
@@ -0,0 +1,44 @@
+package org.neurotecfinger.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Hands out fingerprint ids from the {@code fingerprint_seq} database sequence in blocks of {@link #BLOCK_SIZE},
+ * so most ids cost no round trip and inserts can be batched (IDENTITY columns disable JDBC batching).
+ * Ids are known before the row is written, which lets callers reference a record before it is flushed.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class FingerprintIdAllocator {
+
+    // Must match the sequence INCREMENT BY
+    public static final int BLOCK_SIZE = 50;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private long next;
+
+    private long blockEnd;
+
+    @PostConstruct
+    public void ensureSequence() {
+        // Existing databases used IDENTITY ids; start the sequence after them the first time it is created
+        Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM fingerprint_entity", Long.class);
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS fingerprint_seq START WITH " + (maxId + 1) + " INCREMENT BY " + BLOCK_SIZE);
+    }
+
+    public synchronized long next() {
+        if (next >= blockEnd) {
+            Long blockStart = jdbcTemplate.queryForObject("SELECT nextval('fingerprint_seq')", Long.class);
+            next = blockStart;
+            blockEnd = blockStart + BLOCK_SIZE;
+        }
+        return next++;
+    }
+}
@@ -0,0 +1,20 @@
+package org.neurotecfinger.repository;
+
+import org.neurotecfinger.model.FingerprintImage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface FingerprintImageRepository extends JpaRepository<FingerprintImage, Long> {
+
+    // Single-column reads, so serving one image format never loads the other blob
+    @Query("select i.imageData from FingerprintImage i where i.id = :id")
+    Optional<byte[]> findPngById(@Param("id") long id);
+
+    @Query("select i.wsqData from FingerprintImage i where i.id = :id")
+    Optional<byte[]> findWsqById(@Param("id") long id);
+}
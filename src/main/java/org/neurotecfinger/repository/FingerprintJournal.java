@@ -0,0 +1,193 @@
+package org.neurotecfinger.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.neurotecfinger.model.FingerprintEntity;
+import org.neurotecfinger.model.FingerprintImage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only local journal of fingerprint records accepted but not yet written to the database, so a crash between
+ * capture and the database write loses nothing.
+ * <p>
+ * Records go to numbered segment files ({@code journal-<n>.log}) and are forced to disk before {@link #append}
+ * returns. The writer rotates to a new segment each time it takes the queued records and deletes the old segments once
+ * they are committed. Each record is length-prefixed (big endian): id, quality ({@link Integer#MIN_VALUE} for none),
+ * finger type (UTF-8), template, WSQ and PNG bytes, then a CRC32 of the record; replay stops at the first torn or
+ * corrupt record of a segment. Not thread-safe; callers serialize access.
+ */
+@Slf4j
+public class FingerprintJournal implements AutoCloseable {
+
+    private static final String PREFIX = "journal-";
+
+    private static final String SUFFIX = ".log";
+
+    private final Path dir;
+
+    private final CRC32 crc = new CRC32();
+
+    // Number of the active segment, or of the last one when none is open
+    private long segment;
+
+    private FileChannel active;
+
+    public FingerprintJournal(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        TreeMap<Long, Path> existing = segments();
+        segment = existing.isEmpty() ? 0 : existing.lastKey();
+    }
+
+    /**
+     * Reads every record left by a previous run, oldest first. The segments stay on disk until
+     * {@link #deleteUpTo} is called with the returned records committed.
+     */
+    public List<FingerprintImage> recover() throws IOException {
+        List<FingerprintImage> records = new ArrayList<>();
+        for (Path path : segments().values()) {
+            readSegment(path, records);
+        }
+        return records;
+    }
+
+    /**
+     * Appends the record to the active segment, opening one if needed, and forces it to disk.
+     */
+    public void append(FingerprintImage record) throws IOException {
+        FingerprintEntity fingerprint = record.getFingerprint();
+        byte[] fingerType = fingerprint.getFingerType() != null ? fingerprint.getFingerType().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        byte[] template = orEmpty(fingerprint.getNativeTemplate());
+        byte[] wsq = orEmpty(record.getWsqData());
+        byte[] image = orEmpty(record.getImageData());
+        int length = 8 + 4 + 2 + fingerType.length + 4 + template.length + 4 + wsq.length + 4 + image.length;
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 + length + 4);
+        buffer.putInt(length);
+        buffer.putLong(fingerprint.getId());
+        buffer.putInt(fingerprint.getQuality() != null ? fingerprint.getQuality() : Integer.MIN_VALUE);
+        buffer.putShort((short) fingerType.length).put(fingerType);
+        buffer.putInt(template.length).put(template);
+        buffer.putInt(wsq.length).put(wsq);
+        buffer.putInt(image.length).put(image);
+        crc.reset();
+        crc.update(buffer.array(), 4, length);
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+
+        if (active == null) {
+            segment++;
+            active = FileChannel.open(path(segment), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+        try {
+            while (buffer.hasRemaining()) {
+                active.write(buffer);
+            }
+            active.force(false);
+        } catch (IOException e) {
+            // Never append after a torn record: replay stops there
+            rotate();
+            throw e;
+        }
+    }
+
+    /**
+     * Closes the active segment; the next append starts a new one.
+     *
+     * @return number of the last segment written, covering every record appended so far
+     */
+    public long rotate() throws IOException {
+        if (active != null) {
+            active.close();
+            active = null;
+        }
+        return segment;
+    }
+
+    /**
+     * Deletes the closed segments numbered up to {@code last}.
+     */
+    public void deleteUpTo(long last) throws IOException {
+        for (Map.Entry<Long, Path> entry : segments().headMap(last, true).entrySet()) {
+            if (active != null && entry.getKey() == segment) continue;
+            Files.deleteIfExists(entry.getValue());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        rotate();
+    }
+
+    private TreeMap<Long, Path> segments() throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    segments.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())), file);
+                } catch (NumberFormatException e) {
+                    log.warn("Ignoring unexpected journal file {}", file);
+                }
+            }
+        }
+        return segments;
+    }
+
+    private Path path(long number) {
+        return dir.resolve(PREFIX + number + SUFFIX);
+    }
+
+    private void readSegment(Path path, List<FingerprintImage> records) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path));
+        while (data.remaining() >= 4) {
+            int start = data.position();
+            int length = data.getInt();
+            if (length < 0 || data.remaining() < length + 4) {
+                log.warn("Journal {} ends with a torn record at offset {}", path, start);
+                return;
+            }
+            crc.reset();
+            crc.update(data.array(), start + 4, length);
+            if (data.getInt(start + 4 + length) != (int) crc.getValue()) {
+                log.warn("Journal {} has a corrupt record at offset {}; the rest of the segment is skipped", path, start);
+                return;
+            }
+
+            FingerprintEntity fingerprint = new FingerprintEntity();
+            fingerprint.setId(data.getLong());
+            int quality = data.getInt();
+            fingerprint.setQuality(quality == Integer.MIN_VALUE ? null : quality);
+            fingerprint.setFingerType(new String(read(data, data.getShort() & 0xFFFF), StandardCharsets.UTF_8));
+            fingerprint.setNativeTemplate(read(data, data.getInt()));
+            FingerprintImage record = new FingerprintImage();
+            record.setFingerprint(fingerprint);
+            record.setWsqData(read(data, data.getInt()));
+            record.setImageData(read(data, data.getInt()));
+            data.getInt(); // checksum, verified above
+            records.add(record);
+        }
+    }
+
+    private static byte[] read(ByteBuffer data, int length) {
+        byte[] bytes = new byte[length];
+        data.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] orEmpty(byte[] bytes) {
+        return bytes != null ? bytes : new byte[0];
+    }
+}
@@ -1,9 +1,16 @@
 package org.neurotecfinger.repository;
 
 import org.neurotecfinger.model.FingerprintEntity;
+import org.neurotecfinger.model.FingerprintTemplateView;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -12,5 +19,19 @@ public interface FingerprintRepository extends JpaRepository<FingerprintEntity,
     // Find all fingers of a specific type (e.g., all "r_thumb"s)
     List<FingerprintEntity> findByFingerType(String fingerType);
 
+    // Template-only page of records after the given id (keyset paging, never touches image columns)
+    List<FingerprintTemplateView> findByIdGreaterThanOrderByIdAsc(long afterId, Pageable pageable);
+
+    // Template-only rows committed late with ids below a snapshot's max id (snapshot catch-up)
+    List<FingerprintTemplateView> findByCreatedAtAfterAndIdLessThanEqual(LocalDateTime since, long maxId);
+
+    // Rows for the given ids in one query, as FingerprintTemplateView (change feed, verification) or FingerprintSummaryView
+    <T> List<T> findByIdIn(Collection<Long> ids, Class<T> type);
+
+    // Replaces a template in place, e.g. with a merged one; other nodes pick it up as a template update
+    @Modifying
+    @Query("update FingerprintEntity f set f.nativeTemplate = :template where f.id = :id")
+    int updateTemplate(@Param("id") long id, @Param("template") byte[] template);
+
     // You can add more custom queries here later if needed
 }
\ No newline at end of file
@@ -0,0 +1,127 @@
+package org.neurotecfinger.service;
+
+import org.neurotecfinger.matching.FingerTypes;
+import org.neurotecfinger.matching.IdentifyOptions;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Runs many probes through the identification engine concurrently. The gallery is already resident, so a batch only
+ * pays for decoding and matching each probe. Results are handed back one by one as probes finish.
+ */
+@Service
+public class BatchIdentificationService {
+
+    @Autowired
+    private ScannerService scannerService;
+
+    @Autowired
+    private FingerprintGallery gallery;
+
+    @Autowired
+    @Qualifier("batchIdentificationExecutor")
+    private ExecutorService executor;
+
+    @Value("${biometric.identify.batch-concurrency:0}")
+    private int configuredConcurrency;
+
+    /**
+     * Identifies every probe from the iterator. At most {@code concurrency} probes are in flight, so a streamed
+     * input is read only as fast as it is matched. {@code onResult} is always called on the calling thread.
+     *
+     * @param probes maps with "nativeTemplate" (Base64), optional "id" and optional "fingerTypes"/"fingerType"
+     * @return summary with probe count, elapsed time and throughput
+     */
+    public Map<String, Object> identifyBatch(Iterator<Map<String, Object>> probes, Consumer<Map<String, Object>> onResult)
+            throws InterruptedException {
+        int concurrency = configuredConcurrency > 0 ? configuredConcurrency : Runtime.getRuntime().availableProcessors();
+        CompletionService<Map<String, Object>> completion = new ExecutorCompletionService<>(executor);
+        long start = System.nanoTime();
+        int submitted = 0;
+        int completed = 0;
+        int matched = 0;
+
+        while (probes.hasNext()) {
+            // Backpressure: wait for a free slot before reading the next probe
+            while (submitted - completed >= concurrency) {
+                Map<String, Object> result = await(completion.take());
+                matched += Boolean.TRUE.equals(result.get("matchFound")) ? 1 : 0;
+                onResult.accept(result);
+                completed++;
+            }
+            Map<String, Object> probe = probes.next();
+            int index = submitted++;
+            completion.submit(() -> identifyProbe(index, probe));
+
+            Future<Map<String, Object>> done;
+            while ((done = completion.poll()) != null) {
+                Map<String, Object> result = await(done);
+                matched += Boolean.TRUE.equals(result.get("matchFound")) ? 1 : 0;
+                onResult.accept(result);
+                completed++;
+            }
+        }
+        while (completed < submitted) {
+            Map<String, Object> result = await(completion.take());
+            matched += Boolean.TRUE.equals(result.get("matchFound")) ? 1 : 0;
+            onResult.accept(result);
+            completed++;
+        }
+
+        double elapsedMs = (System.nanoTime() - start) / 1_000_000.0;
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("summary", true);
+        summary.put("probes", submitted);
+        summary.put("matched", matched);
+        summary.put("concurrency", concurrency);
+        summary.put("elapsedMs", elapsedMs);
+        summary.put("throughputPerSecond", elapsedMs > 0 ? submitted * 1000.0 / elapsedMs : 0.0);
+        return summary;
+    }
+
+    private Map<String, Object> identifyProbe(int index, Map<String, Object> probe) {
+        long start = System.nanoTime();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("probeId", probe.containsKey("id") ? probe.get("id") : index);
+        try {
+            Object template = probe.get("nativeTemplate");
+            if (!(template instanceof String)) {
+                result.put("matchFound", false);
+                result.put("error", "nativeTemplate is missing");
+            } else {
+                byte[] probeTemplate = Base64.getDecoder().decode((String) template);
+                IdentifyOptions options = gallery.options(probe);
+                result.putAll(scannerService.identify(probeTemplate, FingerTypes.parseHint(probe), options));
+            }
+        } catch (IllegalArgumentException e) {
+            result.put("matchFound", false);
+            result.put("error", "nativeTemplate must be Base64; maxResults and threshold numbers; speed LOW, MEDIUM or HIGH");
+        }
+        result.put("latencyMs", (System.nanoTime() - start) / 1_000_000.0);
+        return result;
+    }
+
+    private static Map<String, Object> await(Future<Map<String, Object>> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("matchFound", false);
+            result.put("error", String.valueOf(e.getCause()));
+            return result;
+        }
+    }
+}
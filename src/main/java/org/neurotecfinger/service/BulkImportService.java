@@ -0,0 +1,269 @@
+package org.neurotecfinger.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.neurotecfinger.metrics.BiometricMetrics;
+import org.neurotecfinger.metrics.BiometricStage;
+import org.neurotecfinger.model.FingerprintEntity;
+import org.neurotecfinger.model.FingerprintImage;
+import org.neurotecfinger.repository.FingerprintImageRepository;
+import org.neurotecfinger.repository.FingerprintRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Streams fingerprint records from NDJSON into the database and the gallery.
+ * <p>
+ * Each line uses the same keys as the scan response: {@code fingerType}, {@code NFIQ}, {@code NativeTemplate},
+ * {@code WSQImage} and {@code BMPBase64} (all binary fields Base64). Records without a template get one extracted
+ * from their image. Decoding and extraction run in parallel with a bounded number of records in flight, and rows are
+ * written in batched transactions, so memory stays flat regardless of file size. A batch the database refuses is
+ * retried record by record; the refused records are reported as rejected and the import goes on.
+ */
+@Slf4j
+@Service
+public class BulkImportService {
+
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    @Autowired
+    private ScannerService scannerService;
+
+    @Autowired
+    private FingerprintRepository fingerprintRepository;
+
+    @Autowired
+    private FingerprintImageRepository fingerprintImageRepository;
+
+    @Autowired
+    private FingerprintGallery gallery;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private BiometricMetrics metrics;
+
+    @Autowired
+    @Qualifier("importExecutor")
+    private ExecutorService executor;
+
+    @Value("${biometric.import.batch-size:500}")
+    private int batchSize;
+
+    @Value("${biometric.import.max-in-flight:0}")
+    private int configuredMaxInFlight;
+
+    public Map<String, Object> importNdjson(InputStream in) throws IOException, InterruptedException {
+        int maxInFlight = configuredMaxInFlight > 0 ? configuredMaxInFlight : Runtime.getRuntime().availableProcessors() * 4;
+        CompletionService<ImportedLine> completion = new ExecutorCompletionService<>(executor);
+        ImportProgress progress = new ImportProgress();
+        List<ImportedLine> batch = new ArrayList<>(batchSize);
+        long start = System.nanoTime();
+        int submitted = 0;
+        int completed = 0;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) continue;
+            // Backpressure: stop reading while the workers are saturated
+            while (submitted - completed >= maxInFlight) {
+                collect(completion.take(), batch, progress);
+                completed++;
+            }
+            String record = line;
+            int number = lineNumber;
+            completion.submit(() -> prepare(number, record));
+            submitted++;
+
+            Future<ImportedLine> done;
+            while ((done = completion.poll()) != null) {
+                collect(done, batch, progress);
+                completed++;
+            }
+            if (batch.size() >= batchSize) {
+                persist(batch, progress);
+            }
+        }
+        while (completed < submitted) {
+            collect(completion.take(), batch, progress);
+            completed++;
+            if (batch.size() >= batchSize) {
+                persist(batch, progress);
+            }
+        }
+        persist(batch, progress);
+
+        double elapsedMs = (System.nanoTime() - start) / 1_000_000.0;
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("read", submitted);
+        summary.put("imported", progress.imported);
+        summary.put("failed", progress.failed);
+        // Refused by the database, e.g. a constraint violation
+        summary.put("rejected", progress.rejected);
+        summary.put("elapsedMs", elapsedMs);
+        summary.put("recordsPerSecond", elapsedMs > 0 ? progress.imported * 1000.0 / elapsedMs : 0.0);
+        summary.put("errors", progress.errors);
+        log.info("Bulk import: {} imported, {} failed, {} rejected in {} ms",
+                progress.imported, progress.failed, progress.rejected, (long) elapsedMs);
+        return summary;
+    }
+
+    // Runs on a worker: decode the line and extract a template from the image when none was supplied
+    private ImportedLine prepare(int lineNumber, String line) {
+        try {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> fields = objectMapper.readValue(line, Map.class);
+            byte[] template = decode(fields.get("NativeTemplate"));
+            byte[] wsq = decode(fields.get("WSQImage"));
+            byte[] image = decode(fields.get("BMPBase64"));
+            if (template.length == 0 && image.length > 0) {
+                template = scannerService.extractTemplateFromImageBytes(image);
+            }
+            if (template.length == 0) {
+                return ImportedLine.failed(lineNumber, "no NativeTemplate and no extractable BMPBase64 image");
+            }
+            Object nfiq = fields.get("NFIQ");
+            int quality = nfiq instanceof Number ? ((Number) nfiq).intValue() : 0;
+            String fingerType = fields.get("fingerType") != null ? fields.get("fingerType").toString() : "";
+            return ImportedLine.ok(lineNumber, scannerService.newRecord(fingerType, wsq, image, template, quality));
+        } catch (Exception e) {
+            return ImportedLine.failed(lineNumber, e.getMessage());
+        }
+    }
+
+    private static byte[] decode(Object value) {
+        if (!(value instanceof String) || ((String) value).isEmpty()) return new byte[0];
+        return Base64.getDecoder().decode((String) value);
+    }
+
+    private static void collect(Future<ImportedLine> future, List<ImportedLine> batch, ImportProgress progress)
+            throws InterruptedException {
+        try {
+            ImportedLine result = future.get();
+            if (result.record != null) {
+                batch.add(result);
+            } else {
+                progress.fail(result.lineNumber, result.error);
+            }
+        } catch (ExecutionException e) {
+            progress.fail(-1, String.valueOf(e.getCause()));
+        }
+    }
+
+    private void persist(List<ImportedLine> batch, ImportProgress progress) {
+        if (batch.isEmpty()) return;
+        insertIsolated(batch, progress);
+        batch.clear();
+    }
+
+    // One transaction per batch; a batch the database refuses is retried record by record to isolate the bad ones
+    private void insertIsolated(List<ImportedLine> batch, ImportProgress progress) {
+        try {
+            insert(batch);
+            progress.imported += batch.size();
+        } catch (DataIntegrityViolationException e) {
+            if (batch.size() == 1) {
+                ImportedLine refused = batch.get(0);
+                log.warn("Import line {} refused by the database", refused.lineNumber, e);
+                progress.reject(refused.lineNumber, e.getMostSpecificCause().getMessage());
+                return;
+            }
+            for (ImportedLine line : batch) {
+                insertIsolated(Collections.singletonList(line), progress);
+            }
+        }
+    }
+
+    // The persistence context is cleared so it never grows with the import
+    private void insert(List<ImportedLine> batch) {
+        List<FingerprintEntity> entities = new ArrayList<>(batch.size());
+        List<FingerprintImage> images = new ArrayList<>(batch.size());
+        for (ImportedLine line : batch) {
+            entities.add(line.record.getFingerprint());
+            images.add(line.record);
+        }
+        metrics.record(BiometricStage.DB_SAVE, () -> transactionTemplate.executeWithoutResult(status -> {
+            fingerprintRepository.saveAll(entities);
+            fingerprintImageRepository.saveAll(images);
+            entityManager.flush();
+            entityManager.clear();
+        }));
+        gallery.addAll(entities);
+    }
+
+    private static class ImportedLine {
+        private int lineNumber;
+        private FingerprintImage record;
+        private String error;
+
+        static ImportedLine ok(int lineNumber, FingerprintImage record) {
+            ImportedLine line = new ImportedLine();
+            line.lineNumber = lineNumber;
+            line.record = record;
+            return line;
+        }
+
+        static ImportedLine failed(int lineNumber, String error) {
+            ImportedLine line = new ImportedLine();
+            line.lineNumber = lineNumber;
+            line.error = error;
+            return line;
+        }
+    }
+
+    private static class ImportProgress {
+        private int imported;
+        private int failed;
+        private int rejected;
+        private final List<String> errors = new ArrayList<>();
+
+        void fail(int lineNumber, String error) {
+            failed++;
+            report(lineNumber, error);
+        }
+
+        void reject(int lineNumber, String error) {
+            rejected++;
+            report(lineNumber, error);
+        }
+
+        private void report(int lineNumber, String error) {
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add("line " + lineNumber + ": " + error);
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.neurotecfinger.service;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Outputs a scan can produce. Callers ask only for what they need, e.g. identification skips image encoding.
+ */
+public enum CaptureFormat {
+
+    /** Native template ("NativeTemplate"). */
+    TEMPLATE,
+
+    /** PNG image ("BMPBase64" in the legacy response). */
+    PNG,
+
+    /** WSQ image ("WSQImage"). */
+    WSQ;
+
+    /**
+     * Parses a comma separated list such as "template,png"; null or blank means every format.
+     */
+    public static Set<CaptureFormat> parse(String formats) {
+        if (formats == null || formats.isBlank()) {
+            return EnumSet.allOf(CaptureFormat.class);
+        }
+        Set<CaptureFormat> parsed = EnumSet.noneOf(CaptureFormat.class);
+        for (String format : formats.split(",")) {
+            if (!format.isBlank()) {
+                parsed.add(CaptureFormat.valueOf(format.trim().toUpperCase(Locale.ROOT)));
+            }
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,271 @@
+package org.neurotecfinger.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.neurotecfinger.matching.FingerTypes;
+import org.neurotecfinger.matching.IdentifyOptions;
+import org.neurotecfinger.matching.MatchCandidate;
+import org.neurotecfinger.model.FingerprintSummaryView;
+import org.neurotecfinger.model.FingerprintTemplateView;
+import org.neurotecfinger.repository.FingerprintImageRepository;
+import org.neurotecfinger.repository.FingerprintRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Maintenance job that finds stored records of the same finger impression and keeps one record per group, so
+ * identification compares each probe against fewer templates.
+ * <p>
+ * Every record is matched against the gallery within its own finger type; candidates scoring at least
+ * {@code biometric.dedupe.min-score} form a group. The record with the best NFIQ (lowest, then oldest) survives.
+ * In {@link EnrollmentMode#MERGE} mode its template is replaced by one merging the group's impressions. The other
+ * rows are deleted from the database and the gallery, and the snapshot is rewritten afterwards. A dry run only
+ * reports the groups. Records still waiting in the write-behind queue are left alone.
+ * <p>
+ * Removed ids stop being returned by identification; the report maps each one to the record that replaced it.
+ */
+@Slf4j
+@Service
+public class DuplicateConsolidationService {
+
+    private static final int MAX_REPORTED_GROUPS = 1000;
+
+    @Autowired
+    private FingerprintRepository fingerprintRepository;
+
+    @Autowired
+    private FingerprintImageRepository fingerprintImageRepository;
+
+    @Autowired
+    private FingerprintGallery gallery;
+
+    @Autowired
+    private FingerprintWriter fingerprintWriter;
+
+    @Autowired
+    private FingerprintImageService imageService;
+
+    @Autowired
+    private ScannerService scannerService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    @Qualifier("maintenanceExecutor")
+    private ExecutorService maintenanceExecutor;
+
+    // Neurotec scores are -12 * log10(FAR): 96 is a false accept rate of 1e-8, far stricter than identification
+    @Value("${biometric.dedupe.min-score:96}")
+    private int defaultMinScore;
+
+    // Largest group found per record
+    @Value("${biometric.dedupe.max-group-size:10}")
+    private int maxGroupSize;
+
+    @Value("${biometric.enroll.max-merged-records:5}")
+    private int maxMergedRecords;
+
+    @Value("${biometric.gallery.page-size:1000}")
+    private int pageSize;
+
+    private volatile Map<String, Object> lastReport = Collections.singletonMap("state", "IDLE");
+
+    private boolean running;
+
+    /**
+     * Starts the job in the background.
+     *
+     * @param minScore null for {@code biometric.dedupe.min-score}
+     * @return false if a run is already in progress
+     */
+    public synchronized boolean start(boolean dryRun, EnrollmentMode mode, Integer minScore) {
+        if (running) return false;
+        running = true;
+        int threshold = minScore != null ? minScore : defaultMinScore;
+        lastReport = report("RUNNING", dryRun, mode, threshold, new Progress());
+        maintenanceExecutor.execute(() -> {
+            try {
+                run(dryRun, mode, threshold);
+            } finally {
+                synchronized (this) {
+                    running = false;
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Progress of the running job, or the result of the last one.
+     */
+    public Map<String, Object> status() {
+        return lastReport;
+    }
+
+    private void run(boolean dryRun, EnrollmentMode mode, int minScore) {
+        Progress progress = new Progress();
+        long start = System.currentTimeMillis();
+        try {
+            IdentifyOptions options = gallery.options(maxGroupSize, minScore, null);
+            Set<Long> removed = new HashSet<>();
+            long lastId = 0;
+            while (true) {
+                List<FingerprintTemplateView> page = fingerprintRepository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, pageSize));
+                if (page.isEmpty()) break;
+                for (FingerprintTemplateView record : page) {
+                    progress.scanned++;
+                    if (removed.contains(record.getId())) continue;
+                    consolidate(record, options, removed, dryRun, mode, progress);
+                }
+                lastId = page.get(page.size() - 1).getId();
+                lastReport = report("RUNNING", dryRun, mode, minScore, progress);
+                if (page.size() < pageSize) break;
+            }
+            if (!dryRun && progress.removed > 0) {
+                gallery.requestSnapshot();
+            }
+            lastReport = report("DONE", dryRun, mode, minScore, progress);
+            log.info("Duplicate consolidation{}: {} records scanned, {} groups, {} records removed, {} merged in {} ms",
+                    dryRun ? " (dry run)" : "", progress.scanned, progress.groups, progress.removed, progress.merged,
+                    System.currentTimeMillis() - start);
+        } catch (Exception | LinkageError e) {
+            // LinkageError: SDK classes or native libraries missing; the job must still end as FAILED
+            log.error("Duplicate consolidation failed", e);
+            Map<String, Object> failed = report("FAILED", dryRun, mode, minScore, progress);
+            failed.put("error", e.getMessage());
+            lastReport = failed;
+        }
+    }
+
+    private void consolidate(FingerprintTemplateView record, IdentifyOptions options, Set<Long> removed,
+                             boolean dryRun, EnrollmentMode mode, Progress progress) {
+        if (record.getNativeTemplate() == null || record.getNativeTemplate().length == 0) return;
+        if (fingerprintWriter.pending(record.getId()).isPresent()) return;
+        String fingerType = FingerTypes.normalize(record.getFingerType());
+
+        List<Long> ids = new ArrayList<>();
+        Map<Long, Integer> scores = new HashMap<>();
+        for (MatchCandidate candidate : gallery.match(record.getNativeTemplate(), Collections.singletonList(record.getFingerType()), options)) {
+            long id = candidate.getId();
+            if (id == record.getId() || removed.contains(id) || fingerprintWriter.pending(id).isPresent()) continue;
+            ids.add(id);
+            scores.put(id, candidate.getScore());
+        }
+        if (ids.isEmpty()) return;
+
+        // Only the same finger position: the hint may fall back to neighbouring fingers
+        List<FingerprintSummaryView> group = new ArrayList<>();
+        for (FingerprintSummaryView row : fingerprintRepository.findByIdIn(ids, FingerprintSummaryView.class)) {
+            if (FingerTypes.normalize(row.getFingerType()).equals(fingerType)) group.add(row);
+        }
+        if (group.isEmpty()) return;
+        group.addAll(fingerprintRepository.findByIdIn(Collections.singletonList(record.getId()), FingerprintSummaryView.class));
+
+        group.sort(Comparator.comparingInt(DuplicateConsolidationService::nfiqRank).thenComparingLong(FingerprintSummaryView::getId));
+        long survivor = group.get(0).getId();
+        List<Long> duplicates = new ArrayList<>();
+        for (FingerprintSummaryView row : group.subList(1, group.size())) {
+            duplicates.add(row.getId());
+        }
+        removed.addAll(duplicates);
+        progress.groups++;
+        progress.removed += duplicates.size();
+        if (progress.reported.size() < MAX_REPORTED_GROUPS) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("survivorId", String.valueOf(survivor));
+            entry.put("fingerType", fingerType);
+            Map<String, Object> removedScores = new LinkedHashMap<>();
+            for (long id : duplicates) {
+                removedScores.put(String.valueOf(id), id == record.getId() ? scores.get(survivor) : scores.get(id));
+            }
+            // Removed id -> its score against the record that found the group
+            entry.put("removed", removedScores);
+            progress.reported.add(entry);
+        }
+        if (dryRun) return;
+
+        byte[] mergedTemplate = mode == EnrollmentMode.MERGE ? merge(survivor, duplicates) : null;
+        transactionTemplate.executeWithoutResult(status -> {
+            if (mergedTemplate != null) fingerprintRepository.updateTemplate(survivor, mergedTemplate);
+            fingerprintImageRepository.deleteAllByIdInBatch(duplicates);
+            fingerprintRepository.deleteAllByIdInBatch(duplicates);
+        });
+        for (long id : duplicates) {
+            gallery.remove(id);
+            imageService.evict(id);
+        }
+        if (mergedTemplate != null) {
+            gallery.remove(survivor);
+            gallery.addTemplates(fingerprintRepository.findByIdIn(Collections.singletonList(survivor), FingerprintTemplateView.class));
+            progress.merged++;
+        }
+    }
+
+    // Survivor's impressions first, so they are kept when the group exceeds biometric.enroll.max-merged-records
+    private byte[] merge(long survivor, List<Long> duplicates) {
+        List<Long> order = new ArrayList<>();
+        order.add(survivor);
+        order.addAll(duplicates);
+        Map<Long, byte[]> templates = new HashMap<>();
+        for (FingerprintTemplateView row : fingerprintRepository.findByIdIn(order, FingerprintTemplateView.class)) {
+            templates.put(row.getId(), row.getNativeTemplate());
+        }
+        List<byte[]> ordered = new ArrayList<>();
+        for (long id : order) {
+            byte[] template = templates.get(id);
+            if (template != null && template.length > 0) ordered.add(template);
+        }
+        try {
+            return scannerService.mergeTemplates(ordered, maxMergedRecords);
+        } catch (RuntimeException | LinkageError e) {
+            // e.g. templates from the pure-Java matcher, or no SDK on this node: keep the survivor's own template
+            log.warn("Merging the templates of record {} failed, keeping its own template", survivor, e);
+            return null;
+        }
+    }
+
+    // NFIQ 1 is best; 0 or missing means it was never assessed and ranks last
+    private static int nfiqRank(FingerprintSummaryView row) {
+        Integer nfiq = row.getQuality();
+        return nfiq == null || nfiq <= 0 ? Integer.MAX_VALUE : nfiq;
+    }
+
+    private static Map<String, Object> report(String state, boolean dryRun, EnrollmentMode mode, int minScore, Progress progress) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("state", state);
+        report.put("dryRun", dryRun);
+        report.put("mode", mode.name());
+        report.put("minScore", minScore);
+        report.put("scanned", progress.scanned);
+        report.put("groups", progress.groups);
+        report.put("removed", progress.removed);
+        report.put("merged", progress.merged);
+        report.put("updatedAt", Instant.now().toString());
+        report.put("details", new ArrayList<>(progress.reported));
+        return report;
+    }
+
+    private static class Progress {
+        private int scanned;
+        private int groups;
+        private int removed;
+        private int merged;
+        private final List<Map<String, Object>> reported = new ArrayList<>();
+    }
+}
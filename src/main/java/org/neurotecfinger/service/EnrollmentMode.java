@@ -0,0 +1,22 @@
+package org.neurotecfinger.service;
+
+import java.util.Locale;
+
+/**
+ * What an enrollment keeps of its accepted impressions. Either way one record is saved per finger.
+ */
+public enum EnrollmentMode {
+
+    /** The template of the impression with the best NFIQ. */
+    BEST,
+
+    /** One template holding every accepted impression as a separate finger record; matching uses the best of them. */
+    MERGE;
+
+    /**
+     * @throws IllegalArgumentException if the name is not a mode
+     */
+    public static EnrollmentMode parse(String mode) {
+        return valueOf(mode.trim().toUpperCase(Locale.ROOT));
+    }
+}
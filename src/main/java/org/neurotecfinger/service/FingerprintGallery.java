@@ -0,0 +1,300 @@
+package org.neurotecfinger.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.neurotecfinger.matching.GallerySnapshot;
+import org.neurotecfinger.matching.GalleryTemplate;
+import org.neurotecfinger.matching.FingerTypeIndex;
+import org.neurotecfinger.matching.IdentifyOptions;
+import org.neurotecfinger.matching.MatchCandidate;
+import org.neurotecfinger.matching.MatchingSpeed;
+import org.neurotecfinger.metrics.BiometricMetrics;
+import org.neurotecfinger.metrics.BiometricStage;
+import org.neurotecfinger.model.FingerprintEntity;
+import org.neurotecfinger.model.FingerprintTemplateView;
+import org.neurotecfinger.repository.FingerprintChangeLog;
+import org.neurotecfinger.repository.FingerprintRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived in-memory gallery used by identification.
+ * Loaded once at startup, from the on-disk snapshot when one is configured plus the rows written since, otherwise
+ * from the database, and then kept current incrementally as new records are saved.
+ */
+@Slf4j
+@Service
+public class FingerprintGallery {
+
+    @Autowired
+    private FingerTypeIndex engine;
+
+    @Autowired
+    private FingerprintRepository fingerprintRepository;
+
+    @Autowired
+    private BiometricMetrics metrics;
+
+    @Autowired(required = false)
+    private FingerprintChangeLog changeLog;
+
+    @Autowired
+    private ProbeResultCache resultCache;
+
+    @Value("${biometric.gallery.page-size:1000}")
+    private int pageSize;
+
+    @Value("${biometric.identify.max-results:10}")
+    private int maxResults;
+
+    @Value("${biometric.identify.certainty-threshold:0}")
+    private int certaintyThreshold;
+
+    @Value("${biometric.identify.max-results-limit:100}")
+    private int maxResultsLimit;
+
+    // Longest time a writing transaction is expected to stay open; rows committed this late are caught up again
+    @Value("${biometric.gallery.sync.gap-timeout-ms:60000}")
+    private long settleMs;
+
+    @Value("${biometric.gallery.snapshot.path:}")
+    private String snapshotPath;
+
+    @Value("${biometric.gallery.snapshot.refresh-minutes:60}")
+    private long snapshotRefreshMinutes;
+
+    @Autowired
+    @Qualifier("snapshotExecutor")
+    private ScheduledExecutorService snapshotExecutor;
+
+    private volatile long loadedWatermark;
+
+    @PostConstruct
+    public void load() {
+        metrics.record(BiometricStage.GALLERY_LOAD, this::loadPages);
+        resultCache.invalidate();
+        if (!snapshotPath.isEmpty() && snapshotRefreshMinutes > 0) {
+            snapshotExecutor.scheduleWithFixedDelay(this::writeSnapshotQuietly, snapshotRefreshMinutes, snapshotRefreshMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    private void loadPages() {
+        long start = System.currentTimeMillis();
+        engine.clear();
+        long lastId = 0;
+        GallerySnapshot.Header snapshot = snapshotPath.isEmpty() ? null : loadSnapshot();
+        if (snapshot != null) {
+            lastId = snapshot.getMaxId();
+            loadedWatermark = changeLog != null ? snapshot.getChangeSeq() : 0;
+            // Rows committed after the snapshot was read can carry ids below its max id (ids are allocated in blocks)
+            LocalDateTime lateSince = toLocalDateTime(snapshot.getReadStartedAt() - settleMs);
+            enrollPage(fingerprintRepository.findByCreatedAtAfterAndIdLessThanEqual(lateSince, lastId));
+        } else {
+            // Read before the first page so changes committed during the load are replayed by the change feed
+            loadedWatermark = changeLog != null ? changeLog.settledSeq(Duration.ofMillis(settleMs)) : 0;
+        }
+
+        // Stream template-only pages so image blobs are never loaded and memory stays bounded per page
+        int rowsRead = 0;
+        while (true) {
+            List<FingerprintTemplateView> page = fingerprintRepository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, pageSize));
+            if (page.isEmpty()) break;
+            enrollPage(page);
+            lastId = page.get(page.size() - 1).getId();
+            rowsRead += page.size();
+            if (page.size() < pageSize) break;
+        }
+        log.info("Gallery loaded: {} templates in {} ms ({} from snapshot, {} rows from the database)", engine.size(),
+                System.currentTimeMillis() - start, snapshot != null ? snapshot.getCount() : 0, rowsRead);
+
+        // Refresh a missing or stale snapshot in the background so the next start reads little from the database
+        if (!snapshotPath.isEmpty() && (snapshot == null || rowsRead >= pageSize)) {
+            snapshotExecutor.execute(this::writeSnapshotQuietly);
+        }
+    }
+
+    private void enrollPage(List<FingerprintTemplateView> page) {
+        List<GalleryTemplate> templates = new ArrayList<>(page.size());
+        for (FingerprintTemplateView record : page) {
+            GalleryTemplate template = toGalleryTemplate(record);
+            if (template != null) templates.add(template);
+        }
+        engine.enroll(templates);
+    }
+
+    private GallerySnapshot.Header loadSnapshot() {
+        Path path = Paths.get(snapshotPath);
+        if (!Files.exists(path)) return null;
+        try {
+            return GallerySnapshot.read(path, pageSize, engine::enroll);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring gallery snapshot {}, loading from the database", path, e);
+            engine.clear();
+            return null;
+        }
+    }
+
+    /**
+     * Rewrites the snapshot file from the database. Runs in the background; the gallery is not touched.
+     */
+    public void writeSnapshot() throws IOException {
+        long start = System.currentTimeMillis();
+        long changeSeq = changeLog != null ? changeLog.settledSeq(Duration.ofMillis(settleMs)) : 0;
+        try (GallerySnapshot.Writer writer = new GallerySnapshot.Writer(Paths.get(snapshotPath), changeSeq, start)) {
+            long lastId = 0;
+            while (true) {
+                List<FingerprintTemplateView> page = fingerprintRepository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, pageSize));
+                if (page.isEmpty()) break;
+                for (FingerprintTemplateView record : page) {
+                    GalleryTemplate template = toGalleryTemplate(record);
+                    if (template != null) writer.write(template);
+                }
+                lastId = page.get(page.size() - 1).getId();
+                if (page.size() < pageSize) break;
+            }
+            writer.commit(lastId);
+            log.info("Gallery snapshot written: {} templates in {} ms", writer.getCount(), System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Rewrites the snapshot in the background after bulk changes such as deletions, when a snapshot is configured.
+     */
+    public void requestSnapshot() {
+        if (!snapshotPath.isEmpty()) {
+            snapshotExecutor.execute(this::writeSnapshotQuietly);
+        }
+    }
+
+    private void writeSnapshotQuietly() {
+        try {
+            writeSnapshot();
+        } catch (Exception e) {
+            log.warn("Writing the gallery snapshot failed", e);
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
+    public void add(FingerprintEntity record) {
+        GalleryTemplate template = toGalleryTemplate(record.getId(), record.getFingerType(), record.getQuality(), record.getNativeTemplate());
+        if (template != null) {
+            metrics.record(BiometricStage.ENROLL, () -> engine.enroll(Collections.singletonList(template)));
+            resultCache.invalidate();
+        }
+    }
+
+    public void addAll(Collection<FingerprintEntity> records) {
+        List<GalleryTemplate> templates = new ArrayList<>(records.size());
+        for (FingerprintEntity record : records) {
+            GalleryTemplate template = toGalleryTemplate(record.getId(), record.getFingerType(), record.getQuality(), record.getNativeTemplate());
+            if (template != null) templates.add(template);
+        }
+        metrics.record(BiometricStage.ENROLL, () -> engine.enroll(templates));
+        resultCache.invalidate();
+    }
+
+    /**
+     * Enrolls template rows read from the database, e.g. records saved by other nodes.
+     * Enrolling a record that is already in the gallery is harmless; call {@link #remove} first to replace one.
+     */
+    public void addTemplates(Collection<FingerprintTemplateView> records) {
+        List<GalleryTemplate> templates = new ArrayList<>(records.size());
+        for (FingerprintTemplateView record : records) {
+            GalleryTemplate template = toGalleryTemplate(record);
+            if (template != null) templates.add(template);
+        }
+        metrics.record(BiometricStage.ENROLL, () -> engine.enroll(templates));
+        resultCache.invalidate();
+    }
+
+    public void remove(long id) {
+        engine.remove(id);
+        resultCache.invalidate();
+    }
+
+    /**
+     * @return last change feed sequence number covered by the startup load (0 when the feed is disabled)
+     */
+    public long getLoadedWatermark() {
+        return loadedWatermark;
+    }
+
+    /**
+     * @param fingerTypes optional finger type hint; when empty the whole gallery is searched
+     */
+    public List<MatchCandidate> identify(byte[] probeTemplate, Collection<String> fingerTypes) {
+        return identify(probeTemplate, fingerTypes, options(null, null, null));
+    }
+
+    public List<MatchCandidate> identify(byte[] probeTemplate, Collection<String> fingerTypes, IdentifyOptions options) {
+        return resultCache.get(probeTemplate, fingerTypes, options,
+                () -> metrics.timeUnchecked(BiometricStage.IDENTIFY, () -> engine.identify(probeTemplate, fingerTypes, options)));
+    }
+
+    /**
+     * Matches without the result cache, for maintenance jobs probing the gallery with its own templates.
+     */
+    public List<MatchCandidate> match(byte[] probeTemplate, Collection<String> fingerTypes, IdentifyOptions options) {
+        return engine.identify(probeTemplate, fingerTypes, options);
+    }
+
+    /**
+     * Identification options for one request; null values fall back to the configuration.
+     *
+     * @param maxResults number of candidates (k), capped at {@code biometric.identify.max-results-limit}
+     * @param minScore   lowest score returned, overriding {@code biometric.matching.threshold}
+     */
+    public IdentifyOptions options(Integer maxResults, Integer minScore, MatchingSpeed speed) {
+        int k = maxResults != null && maxResults > 0 ? Math.min(maxResults, maxResultsLimit) : this.maxResults;
+        return new IdentifyOptions(k, certaintyThreshold, minScore, speed);
+    }
+
+    /**
+     * Reads {@code maxResults} (or {@code k}), {@code threshold} and {@code speed} from an identify request.
+     *
+     * @throws IllegalArgumentException if a value is not a number or not a known speed
+     */
+    public IdentifyOptions options(Map<String, Object> request) {
+        Object k = request.containsKey("maxResults") ? request.get("maxResults") : request.get("k");
+        Object threshold = request.get("threshold");
+        Object speed = request.get("speed");
+        return options(k != null ? Integer.valueOf(k.toString()) : null,
+                threshold != null ? Integer.valueOf(threshold.toString()) : null,
+                speed != null ? MatchingSpeed.parse(speed.toString()) : null);
+    }
+
+    public int size() {
+        return engine.size();
+    }
+
+    private GalleryTemplate toGalleryTemplate(FingerprintTemplateView record) {
+        return toGalleryTemplate(record.getId(), record.getFingerType(), record.getQuality(), record.getNativeTemplate());
+    }
+
+    private GalleryTemplate toGalleryTemplate(long id, String fingerType, Integer quality, byte[] nativeTemplate) {
+        if (nativeTemplate == null || nativeTemplate.length == 0) return null;
+        return new GalleryTemplate(id, fingerType, quality, nativeTemplate);
+    }
+}
@@ -0,0 +1,136 @@
+package org.neurotecfinger.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.neurotecfinger.model.FingerprintImage;
+import org.neurotecfinger.repository.FingerprintImageRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+
+/**
+ * Stored fingerprint images for the binary image endpoints: PNG or WSQ payloads read one column at a time, and PNG
+ * thumbnails generated on first request and kept in a cache bounded by {@code biometric.images.thumbnail-cache-bytes}.
+ * Records still waiting in the write-behind queue are served from memory.
+ */
+@Slf4j
+@Service
+public class FingerprintImageService {
+
+    @Autowired
+    private FingerprintImageRepository fingerprintImageRepository;
+
+    @Autowired
+    private FingerprintWriter fingerprintWriter;
+
+    @Value("${biometric.images.thumbnail-cache-bytes:33554432}")
+    private long thumbnailCacheBytes;
+
+    @Value("${biometric.images.thumbnail-max-size:512}")
+    private int thumbnailMaxSize;
+
+    private Cache<String, byte[]> thumbnails;
+
+    @PostConstruct
+    public void init() {
+        thumbnails = Caffeine.newBuilder()
+                .maximumWeight(thumbnailCacheBytes)
+                .weigher((String key, byte[] png) -> png.length)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Whether the record exists, queued or stored, without reading its images; lets cached copies be revalidated
+     * cheaply and stop being confirmed once the record is deleted.
+     */
+    public boolean exists(long fingerprintId) {
+        return fingerprintWriter.pending(fingerprintId).isPresent() || fingerprintImageRepository.existsById(fingerprintId);
+    }
+
+    /**
+     * @param format {@link CaptureFormat#PNG} or {@link CaptureFormat#WSQ}
+     * @return the stored image, empty when the record does not exist or has no image in that format
+     */
+    public Optional<byte[]> image(long fingerprintId, CaptureFormat format) {
+        Optional<byte[]> image;
+        Optional<FingerprintImage> pending = fingerprintWriter.pending(fingerprintId);
+        if (pending.isPresent()) {
+            image = Optional.ofNullable(format == CaptureFormat.WSQ ? pending.get().getWsqData() : pending.get().getImageData());
+        } else if (format == CaptureFormat.WSQ) {
+            image = fingerprintImageRepository.findWsqById(fingerprintId);
+        } else if (format == CaptureFormat.PNG) {
+            image = fingerprintImageRepository.findPngById(fingerprintId);
+        } else {
+            throw new IllegalArgumentException("Not an image format: " + format);
+        }
+        return image.filter(bytes -> bytes.length > 0);
+    }
+
+    /**
+     * PNG scaled down to fit {@code size} x {@code size} pixels, keeping the aspect ratio; never scaled up.
+     */
+    public Optional<byte[]> thumbnail(long fingerprintId, int size) {
+        int bounded = Math.max(16, Math.min(size, thumbnailMaxSize));
+        String key = fingerprintId + "@" + bounded;
+        byte[] cached = thumbnails.getIfPresent(key);
+        if (cached != null) return Optional.of(cached);
+
+        Optional<byte[]> thumbnail = image(fingerprintId, CaptureFormat.PNG).map(png -> scale(png, bounded));
+        // Records still being written are not cached; their ids could still be refused by the database
+        if (thumbnail.isPresent() && !fingerprintWriter.pending(fingerprintId).isPresent()) {
+            thumbnails.put(key, thumbnail.get());
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Drops the cached thumbnails of a deleted record.
+     */
+    public void evict(long fingerprintId) {
+        String prefix = fingerprintId + "@";
+        thumbnails.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    public Cache<String, ?> getThumbnailCache() {
+        return thumbnails;
+    }
+
+    private static byte[] scale(byte[] png, int size) {
+        try {
+            BufferedImage source = ImageIO.read(new ByteArrayInputStream(png));
+            if (source == null) throw new IOException("Stored image is not a readable PNG");
+            double ratio = Math.min(1.0, Math.min((double) size / source.getWidth(), (double) size / source.getHeight()));
+            int width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+            int height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+
+            // Fingerprints are grayscale; an 8-bit gray thumbnail is a fraction of the RGB size
+            BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+            Graphics2D graphics = scaled.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(source, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(scaled, "png", out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
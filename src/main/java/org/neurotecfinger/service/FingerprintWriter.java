@@ -0,0 +1,322 @@
+package org.neurotecfinger.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.neurotecfinger.metrics.BiometricMetrics;
+import org.neurotecfinger.metrics.BiometricStage;
+import org.neurotecfinger.model.FingerprintEntity;
+import org.neurotecfinger.model.FingerprintImage;
+import org.neurotecfinger.model.FingerprintSummaryView;
+import org.neurotecfinger.repository.FingerprintImageRepository;
+import org.neurotecfinger.repository.FingerprintJournal;
+import org.neurotecfinger.repository.FingerprintRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind persistence of captured fingerprints.
+ * <p>
+ * {@link #save} appends the record to the local {@link FingerprintJournal}, enrolls its template in the gallery and
+ * returns; the record is identifiable at once and the scan response does not wait for the database. A single writer
+ * thread takes the queued records every {@code biometric.persist.flush-interval-ms} and inserts them in batched
+ * transactions, then deletes the journal segments they came from. Records left in the journal by a crash are
+ * replayed at startup, skipping those the database already has.
+ * <p>
+ * The queue is bounded: when {@code biometric.persist.queue-capacity} records are waiting, {@link #save} blocks for up
+ * to {@code biometric.persist.enqueue-timeout-ms} and then fails. With the database down, records stay queued and
+ * journaled and the flush is retried; a record the database refuses (constraint violation) is dropped from the
+ * gallery and logged.
+ */
+@Slf4j
+@Service
+public class FingerprintWriter {
+
+    private static final long SHUTDOWN_FLUSH_SECONDS = 30;
+
+    @Autowired
+    private FingerprintRepository fingerprintRepository;
+
+    @Autowired
+    private FingerprintImageRepository fingerprintImageRepository;
+
+    @Autowired
+    private FingerprintGallery gallery;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private BiometricMetrics metrics;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Autowired
+    @Qualifier("persistExecutor")
+    private ScheduledExecutorService persistExecutor;
+
+    @Value("${biometric.persist.write-behind:true}")
+    private boolean writeBehind;
+
+    @Value("${biometric.persist.journal-dir:./data/journal}")
+    private String journalDir;
+
+    @Value("${biometric.persist.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${biometric.persist.batch-size:200}")
+    private int batchSize;
+
+    @Value("${biometric.persist.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    @Value("${biometric.persist.enqueue-timeout-ms:5000}")
+    private long enqueueTimeoutMs;
+
+    private FingerprintJournal journal;
+
+    private Semaphore capacity;
+
+    // Guarded by the journal: a record is queued in the order it was journaled
+    private final Queue<QueuedRecord> queue = new ArrayDeque<>();
+
+    // Records taken from the queue whose flush failed; only touched by the writer thread
+    private final List<QueuedRecord> retry = new ArrayList<>();
+
+    // Accepted but not yet committed, by id, so reads can see them before the flush
+    private final Map<Long, FingerprintImage> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private Timer latency;
+
+    private static class QueuedRecord {
+
+        private final FingerprintImage record;
+
+        private final long enqueuedAt = System.nanoTime();
+
+        QueuedRecord(FingerprintImage record) {
+            this.record = record;
+        }
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        latency = Timer.builder("biometric.persist.latency")
+                .description("Time from accepting a fingerprint to committing it to the database")
+                .publishPercentileHistogram()
+                .register(registry);
+        if (!writeBehind) {
+            log.info("Write-behind persistence disabled; fingerprints are saved synchronously");
+            return;
+        }
+        journal = new FingerprintJournal(Paths.get(journalDir));
+        int recovered = recover();
+        capacity = new Semaphore(queueCapacity - recovered);
+        persistExecutor.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        if (journal == null) return;
+        // Last flush on the writer thread; anything it cannot write stays in the journal for the next start
+        try {
+            persistExecutor.submit(this::flushQuietly).get(SHUTDOWN_FLUSH_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("Final flush did not finish; {} fingerprints are left in the journal", pending.size());
+        }
+        synchronized (journal) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Accepts a new record: journaled and enrolled now, written to the database shortly after.
+     *
+     * @throws IllegalStateException if the queue stayed full for the enqueue timeout
+     */
+    public void save(FingerprintImage record) {
+        if (!writeBehind) {
+            saveNow(record);
+            return;
+        }
+        try {
+            if (!capacity.tryAcquire(enqueueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("Fingerprint persistence queue is full (" + queueCapacity + " records)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the persistence queue", e);
+        }
+        long id = record.getFingerprint().getId();
+        try {
+            synchronized (journal) {
+                journal.append(record);
+                pending.put(id, record);
+                // Enrolled before the writer can take it, so a refused record is never re-added after its removal
+                gallery.add(record.getFingerprint());
+                queue.add(new QueuedRecord(record));
+            }
+        } catch (IOException e) {
+            capacity.release();
+            log.warn("Journal write failed, saving fingerprint {} synchronously", id, e);
+            saveNow(record);
+        }
+    }
+
+    /**
+     * A record accepted but not committed yet, if any.
+     */
+    public Optional<FingerprintImage> pending(long id) {
+        return Optional.ofNullable(pending.get(id));
+    }
+
+    public int queueDepth() {
+        return pending.size();
+    }
+
+    public long rejectedCount() {
+        return rejected.get();
+    }
+
+    private void saveNow(FingerprintImage record) {
+        long start = System.nanoTime();
+        FingerprintEntity saved = metrics.timeUnchecked(BiometricStage.DB_SAVE, () -> {
+            FingerprintEntity entity = fingerprintRepository.save(record.getFingerprint());
+            fingerprintImageRepository.save(record);
+            return entity;
+        });
+        latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        gallery.add(saved);
+    }
+
+    private int recover() throws IOException {
+        List<FingerprintImage> records = journal.recover();
+        if (records.isEmpty()) return 0;
+
+        Set<Long> committed = new HashSet<>();
+        for (int from = 0; from < records.size(); from += batchSize) {
+            List<Long> ids = new ArrayList<>();
+            for (FingerprintImage record : records.subList(from, Math.min(records.size(), from + batchSize))) {
+                ids.add(record.getFingerprint().getId());
+            }
+            for (FingerprintSummaryView row : fingerprintRepository.findByIdIn(ids, FingerprintSummaryView.class)) {
+                committed.add(row.getId());
+            }
+        }
+        List<FingerprintEntity> replayed = new ArrayList<>();
+        for (FingerprintImage record : records) {
+            long id = record.getFingerprint().getId();
+            if (committed.contains(id) || pending.containsKey(id)) continue;
+            pending.put(id, record);
+            queue.add(new QueuedRecord(record));
+            replayed.add(record.getFingerprint());
+        }
+        gallery.addAll(replayed);
+        if (replayed.isEmpty()) {
+            journal.deleteUpTo(journal.rotate());
+        }
+        log.info("Journal recovery: {} records found, {} already in the database, {} queued again",
+                records.size(), records.size() - replayed.size(), replayed.size());
+        return replayed.size();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("Flushing {} queued fingerprints failed, retrying in {} ms", retry.size(), flushIntervalMs, e);
+        }
+    }
+
+    // Runs on the writer thread only
+    private void flush() throws IOException {
+        long segment;
+        synchronized (journal) {
+            if (queue.isEmpty() && retry.isEmpty()) return;
+            retry.addAll(queue);
+            queue.clear();
+            // Every record journaled so far is now in retry; later ones go to a new segment
+            segment = journal.rotate();
+        }
+        while (!retry.isEmpty()) {
+            List<QueuedRecord> batch = retry.subList(0, Math.min(batchSize, retry.size()));
+            persist(batch);
+            long now = System.nanoTime();
+            for (QueuedRecord queued : batch) {
+                latency.record(now - queued.enqueuedAt, TimeUnit.NANOSECONDS);
+                pending.remove(queued.record.getFingerprint().getId());
+            }
+            capacity.release(batch.size());
+            batch.clear();
+        }
+        synchronized (journal) {
+            journal.deleteUpTo(segment);
+        }
+    }
+
+    // One transaction per batch; a batch the database refuses is retried record by record to isolate the bad ones
+    private void persist(List<QueuedRecord> batch) {
+        try {
+            insert(batch);
+        } catch (DataIntegrityViolationException e) {
+            if (batch.size() == 1) {
+                FingerprintEntity fingerprint = batch.get(0).record.getFingerprint();
+                log.error("Dropping fingerprint {} refused by the database", fingerprint.getId(), e);
+                gallery.remove(fingerprint.getId());
+                rejected.incrementAndGet();
+                return;
+            }
+            for (QueuedRecord queued : batch) {
+                persist(Collections.singletonList(queued));
+            }
+        }
+    }
+
+    private void insert(List<QueuedRecord> batch) {
+        List<FingerprintEntity> entities = new ArrayList<>(batch.size());
+        List<FingerprintImage> images = new ArrayList<>(batch.size());
+        for (QueuedRecord queued : batch) {
+            entities.add(queued.record.getFingerprint());
+            images.add(queued.record);
+        }
+        metrics.record(BiometricStage.DB_SAVE, () -> transactionTemplate.executeWithoutResult(status -> {
+            fingerprintRepository.saveAll(entities);
+            fingerprintImageRepository.saveAll(images);
+            entityManager.flush();
+            entityManager.clear();
+        }));
+    }
+}
@@ -0,0 +1,258 @@
+package org.neurotecfinger.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.neurotecfinger.model.FingerprintTemplateView;
+import org.neurotecfinger.repository.FingerprintChange;
+import org.neurotecfinger.repository.FingerprintChangeLog;
+import org.neurotecfinger.repository.FingerprintRepository;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Keeps this node's gallery current with records written by other nodes sharing the database.
+ * <p>
+ * Tails the {@code fingerprint_change} feed from the watermark of the startup load, which lags by the gap timeout
+ * so that changes still in flight during the load are replayed (applying a change twice is harmless). A PostgreSQL
+ * {@code LISTEN fingerprint_change} connection wakes the feed as soon as a writer commits; the notification wait
+ * times out after the poll interval, so changes are still picked up if a notification is lost or the connection
+ * drops. Only the changed templates are read and enrolled, never the whole gallery.
+ * <p>
+ * Change sequence numbers become visible in commit order, not in number order. Numbers above a gap are applied
+ * straight away and remembered; the watermark only moves past a gap once it is filled or has stayed open for the
+ * gap timeout (a rolled back transaction leaves a permanent gap).
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "biometric.gallery.sync.enabled", havingValue = "true")
+public class GalleryChangeFeed {
+
+    @Autowired
+    private FingerprintChangeLog changeLog;
+
+    @Autowired
+    private FingerprintRepository fingerprintRepository;
+
+    @Autowired
+    private FingerprintGallery gallery;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Value("${biometric.gallery.sync.poll-ms:1000}")
+    private long pollMs;
+
+    @Value("${biometric.gallery.sync.batch-size:500}")
+    private int batchSize;
+
+    @Value("${biometric.gallery.sync.gap-timeout-ms:60000}")
+    private long gapTimeoutMs;
+
+    @Value("${biometric.gallery.sync.retention-hours:24}")
+    private long retentionHours;
+
+    // Every change with a sequence number up to the watermark has been applied or given up on
+    private long watermark;
+
+    // Applied changes above the watermark
+    private final TreeSet<Long> appliedAbove = new TreeSet<>();
+
+    // Missing sequence numbers below the highest applied one, with the time they were first seen missing
+    private final TreeMap<Long, Long> openGaps = new TreeMap<>();
+
+    private long lastPrune;
+
+    private volatile boolean running;
+
+    private Thread worker;
+
+    // Held for the lifetime of the feed, so it occupies one connection of the pool
+    private Connection listenConnection;
+
+    @PostConstruct
+    public void start() {
+        watermark = gallery.getLoadedWatermark();
+        running = true;
+        worker = new Thread(this::run, "gallery-sync");
+        worker.setDaemon(true);
+        worker.start();
+        log.info("Gallery change feed started at sequence {}", watermark);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        worker.interrupt();
+        worker.join(pollMs * 2);
+        closeListenConnection();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                while (running && poll() == batchSize) {
+                    // keep draining full batches before waiting again
+                }
+                prune();
+                awaitNotification();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                if (!running) return;
+                log.warn("Gallery sync failed, retrying in {} ms", pollMs, e);
+                closeListenConnection();
+                try {
+                    Thread.sleep(pollMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the next batch of changes after the watermark.
+     *
+     * @return number of new change rows read after the highest applied one
+     */
+    int poll() {
+        long from = appliedAbove.isEmpty() ? watermark : appliedAbove.last();
+        List<FingerprintChange> changes = new ArrayList<>(changeLog.changesAfter(from, batchSize));
+        int read = changes.size();
+        if (!openGaps.isEmpty()) {
+            List<Long> gaps = new ArrayList<>(openGaps.keySet());
+            changes.addAll(changeLog.changesIn(gaps.size() > batchSize ? gaps.subList(0, batchSize) : gaps));
+            changes.sort(Comparator.comparingLong(FingerprintChange::getSeq));
+        }
+
+        // Collapse the batch in sequence order to the last operation per record. Upserts read the current row, so a
+        // late gap change cannot resurrect a record that a later change already deleted.
+        Set<Long> upserts = new LinkedHashSet<>();
+        Set<Long> replaced = new LinkedHashSet<>();
+        Set<Long> deletes = new LinkedHashSet<>();
+        List<Long> applied = new ArrayList<>(changes.size());
+        for (FingerprintChange change : changes) {
+            if (appliedAbove.contains(change.getSeq())) continue;
+            applied.add(change.getSeq());
+            long id = change.getFingerprintId();
+            if (change.getOperation() == FingerprintChange.DELETE) {
+                upserts.remove(id);
+                replaced.remove(id);
+                deletes.add(id);
+            } else {
+                deletes.remove(id);
+                upserts.add(id);
+                if (change.getOperation() == FingerprintChange.UPDATE) replaced.add(id);
+            }
+        }
+
+        for (long id : deletes) {
+            gallery.remove(id);
+        }
+        for (long id : replaced) {
+            gallery.remove(id);
+        }
+        if (!upserts.isEmpty()) {
+            // Rows deleted again since the change was recorded are simply not found
+            List<FingerprintTemplateView> rows = fingerprintRepository.findByIdIn(new ArrayList<>(upserts), FingerprintTemplateView.class);
+            gallery.addTemplates(rows);
+        }
+        if (!deletes.isEmpty() || !upserts.isEmpty()) {
+            log.debug("Gallery sync applied {} upserts and {} deletes", upserts.size(), deletes.size());
+        }
+
+        appliedAbove.addAll(applied);
+        advanceWatermark(System.currentTimeMillis());
+        return read;
+    }
+
+    void advanceWatermark(long now) {
+        if (appliedAbove.isEmpty()) return;
+        long highest = appliedAbove.last();
+        for (long seq = watermark + 1; seq < highest; seq++) {
+            if (!appliedAbove.contains(seq)) openGaps.putIfAbsent(seq, now);
+        }
+        while (true) {
+            long next = watermark + 1;
+            if (appliedAbove.remove(next)) {
+                openGaps.remove(next);
+                watermark = next;
+                continue;
+            }
+            Long openedAt = openGaps.get(next);
+            if (openedAt != null && now - openedAt >= gapTimeoutMs) {
+                openGaps.remove(next);
+                watermark = next;
+                continue;
+            }
+            break;
+        }
+    }
+
+    private void awaitNotification() throws SQLException, InterruptedException {
+        PGConnection connection = listenConnection();
+        if (connection == null) {
+            Thread.sleep(pollMs);
+            return;
+        }
+        // Returns early on the first notification; the result itself carries nothing the poll needs
+        connection.getNotifications((int) pollMs);
+    }
+
+    private PGConnection listenConnection() throws SQLException {
+        if (listenConnection == null) {
+            Connection connection = dataSource.getConnection();
+            if (!connection.isWrapperFor(PGConnection.class)) {
+                // Not PostgreSQL: fall back to plain polling
+                connection.close();
+                return null;
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("LISTEN " + FingerprintChangeLog.CHANNEL);
+            }
+            listenConnection = connection;
+        }
+        return listenConnection.unwrap(PGConnection.class);
+    }
+
+    private void closeListenConnection() {
+        if (listenConnection == null) return;
+        try {
+            listenConnection.close();
+        } catch (SQLException e) {
+            log.debug("Closing the gallery sync connection failed", e);
+        }
+        listenConnection = null;
+    }
+
+    // Every node prunes; the delete is idempotent, so running it more than once is harmless
+    private void prune() {
+        long now = System.currentTimeMillis();
+        if (now - lastPrune < Duration.ofHours(1).toMillis()) return;
+        lastPrune = now;
+        int removed = changeLog.deleteOlderThan(Instant.now().minus(Duration.ofHours(retentionHours)));
+        if (removed > 0) {
+            log.info("Pruned {} gallery change rows older than {} h", removed, retentionHours);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.neurotecfinger.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.AllArgsConstructor;
+import org.neurotecfinger.matching.FingerTypes;
+import org.neurotecfinger.matching.IdentifyOptions;
+import org.neurotecfinger.matching.MatchCandidate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of identification results keyed by a SHA-256 of the probe template, the finger type hint and the
+ * matching parameters, so a probe sent again within the TTL (retries, double clicks, multi-step flows) skips matching.
+ * <p>
+ * Every gallery change bumps a generation counter. Results are stored with the generation read before matching
+ * started and only served while it is still current, so a result computed while the gallery was changing is never
+ * returned afterwards.
+ */
+@Component
+public class ProbeResultCache {
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Cache<String, CachedResult> cache;
+
+    private final boolean enabled;
+
+    public ProbeResultCache(@Value("${biometric.identify.cache.max-size:10000}") long maxSize,
+                            @Value("${biometric.identify.cache.ttl-seconds:30}") long ttlSeconds) {
+        this.enabled = maxSize > 0 && ttlSeconds > 0;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(Math.max(maxSize, 0))
+                .expireAfterWrite(Duration.ofSeconds(Math.max(ttlSeconds, 0)))
+                .recordStats()
+                .build();
+    }
+
+    @AllArgsConstructor
+    private static class CachedResult {
+
+        private final long generation;
+
+        private final List<MatchCandidate> candidates;
+    }
+
+    /**
+     * Returns the cached result for the probe, or runs {@code identification} and caches what it returns.
+     */
+    public List<MatchCandidate> get(byte[] probeTemplate, Collection<String> fingerTypes, IdentifyOptions options,
+                                    Supplier<List<MatchCandidate>> identification) {
+        if (!enabled) return identification.get();
+        String key = key(probeTemplate, fingerTypes, options);
+        long current = generation.get();
+        CachedResult cached = cache.getIfPresent(key);
+        if (cached != null && cached.generation == current) {
+            return cached.candidates;
+        }
+        List<MatchCandidate> candidates = Collections.unmodifiableList(identification.get());
+        if (generation.get() == current) {
+            cache.put(key, new CachedResult(current, candidates));
+        }
+        return candidates;
+    }
+
+    /**
+     * Call after every gallery change, once the change is visible to identification.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    public Cache<String, ?> getCache() {
+        return cache;
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> response = new HashMap<>();
+        response.put("enabled", enabled);
+        response.put("size", cache.estimatedSize());
+        response.put("hits", stats.hitCount());
+        response.put("misses", stats.missCount());
+        response.put("hitRate", stats.hitRate());
+        response.put("evictions", stats.evictionCount());
+        response.put("generation", generation.get());
+        return response;
+    }
+
+    private static String key(byte[] probeTemplate, Collection<String> fingerTypes, IdentifyOptions options) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        TreeSet<String> hint = new TreeSet<>();
+        if (fingerTypes != null) {
+            for (String fingerType : fingerTypes) {
+                hint.add(FingerTypes.normalize(fingerType));
+            }
+        }
+        return Base64.getEncoder().encodeToString(digest.digest(probeTemplate)) + "|" + String.join(",", hint)
+                + "|" + options.getMaxResults() + "|" + options.getCertaintyThreshold() + "|" + options.getMinScore() + "|" + options.getSpeed();
+    }
+}
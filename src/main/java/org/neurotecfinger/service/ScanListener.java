@@ -0,0 +1,37 @@
+package org.neurotecfinger.service;
+
+/**
+ * Progress callbacks of one capture, invoked on the capturing thread.
+ */
+public interface ScanListener {
+
+    ScanListener NONE = new ScanListener() {
+    };
+
+    /**
+     * The scanner is locked and a client borrowed; {@code cancel} aborts this capture only.
+     *
+     * @return false if the scan was abandoned meanwhile, so the capture must not start
+     */
+    default boolean onScannerAcquired(String scannerId, Runnable cancel) {
+        return true;
+    }
+
+    /**
+     * The client is about to go back to the pool; the {@code cancel} handle must not be used after this returns.
+     */
+    default void onCaptureReleased() {
+    }
+
+    /**
+     * A finger was detected and its image captured.
+     */
+    default void onFingerCaptured() {
+    }
+
+    /**
+     * Quality assessment and, if requested, template extraction finished.
+     */
+    default void onExtracted(int nfiq, int templateBytes) {
+    }
+}
@@ -0,0 +1,247 @@
+package org.neurotecfinger.service;
+
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * One asynchronous scan: its progress, its result and the handle to cancel its capture.
+ * Subscribers receive a snapshot on every state change; the last one is sent for the terminal state. Snapshots are
+ * published under the session lock so every subscriber sees the states in order.
+ */
+public class ScanSession implements ScanListener {
+
+    public enum State {
+        QUEUED, CAPTURING, CAPTURED, EXTRACTED, COMPLETED, FAILED, CANCELLED, TIMED_OUT;
+
+        public boolean isTerminal() {
+            return this == COMPLETED || this == FAILED || this == CANCELLED || this == TIMED_OUT;
+        }
+    }
+
+    @Getter
+    private final String id;
+
+    @Getter
+    private final String fingerType;
+
+    @Getter
+    private final Set<CaptureFormat> formats;
+
+    @Getter
+    private final boolean save;
+
+    // Null for a plain scan; enrollments capture several quality-gated impressions
+    @Getter
+    private final EnrollmentMode enrollment;
+
+    @Getter
+    private final int impressions;
+
+    @Getter
+    private final Instant createdAt = Instant.now();
+
+    @Getter
+    private final CompletableFuture<Map<String, Object>> completion = new CompletableFuture<>();
+
+    private final List<Consumer<Map<String, Object>>> subscribers = new CopyOnWriteArrayList<>();
+
+    private State state = State.QUEUED;
+
+    private String scannerId;
+
+    private Integer nfiq;
+
+    private Integer templateBytes;
+
+    private int impressionsAccepted;
+
+    private int impressionsRejected;
+
+    private Map<String, Object> result;
+
+    private String error;
+
+    // Cancels the capture while its pooled client is borrowed; guarded by captureLock, null otherwise
+    private Runnable cancelCapture;
+
+    private final Object captureLock = new Object();
+
+    private Future<?> task;
+
+    ScanSession(String id, String fingerType, String scannerId, Set<CaptureFormat> formats, boolean save) {
+        this(id, fingerType, scannerId, formats, save, null, 1);
+    }
+
+    ScanSession(String id, String fingerType, String scannerId, Set<CaptureFormat> formats, boolean save,
+                EnrollmentMode enrollment, int impressions) {
+        this.id = id;
+        this.fingerType = fingerType;
+        this.scannerId = scannerId;
+        this.formats = formats;
+        this.save = save;
+        this.enrollment = enrollment;
+        this.impressions = impressions;
+    }
+
+    synchronized void setTask(Future<?> task) {
+        this.task = task;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized String getError() {
+        return error;
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new HashMap<>();
+        snapshot.put("sessionId", id);
+        snapshot.put("state", state.name());
+        snapshot.put("fingerType", fingerType);
+        snapshot.put("createdAt", createdAt.toString());
+        if (scannerId != null) snapshot.put("scannerId", scannerId);
+        if (nfiq != null) snapshot.put("NFIQ", nfiq);
+        if (templateBytes != null) snapshot.put("templateBytes", templateBytes);
+        if (enrollment != null) {
+            snapshot.put("enrollmentMode", enrollment.name());
+            snapshot.put("impressionsRequired", impressions);
+            snapshot.put("impressionsAccepted", impressionsAccepted);
+            snapshot.put("impressionsRejected", impressionsRejected);
+        }
+        if (result != null) snapshot.put("data", result);
+        if (error != null) snapshot.put("error", error);
+        return snapshot;
+    }
+
+    /**
+     * Sends the current snapshot right away and every later change until the session ends.
+     */
+    public synchronized void subscribe(Consumer<Map<String, Object>> subscriber) {
+        if (!state.isTerminal()) subscribers.add(subscriber);
+        subscriber.accept(snapshot());
+    }
+
+    public void unsubscribe(Consumer<Map<String, Object>> subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    @Override
+    public boolean onScannerAcquired(String scannerId, Runnable cancel) {
+        synchronized (this) {
+            this.scannerId = scannerId;
+        }
+        synchronized (captureLock) {
+            cancelCapture = cancel;
+        }
+        // Cancelled or timed out while the scanner was being selected: a cancel now would reach no capture
+        if (isFinished()) return false;
+        transition(State.CAPTURING);
+        return true;
+    }
+
+    @Override
+    public void onCaptureReleased() {
+        synchronized (captureLock) {
+            cancelCapture = null;
+        }
+    }
+
+    @Override
+    public void onFingerCaptured() {
+        transition(State.CAPTURED);
+    }
+
+    @Override
+    public void onExtracted(int nfiq, int templateBytes) {
+        synchronized (this) {
+            this.nfiq = nfiq;
+            this.templateBytes = templateBytes;
+        }
+        transition(State.EXTRACTED);
+    }
+
+    /**
+     * Counts an enrollment impression as accepted or rejected by the quality gate and publishes the new counts.
+     */
+    synchronized void impressionAssessed(boolean accepted) {
+        if (state.isTerminal()) return;
+        if (accepted) impressionsAccepted++; else impressionsRejected++;
+        publish(snapshot());
+    }
+
+    void complete(Map<String, Object> result) {
+        finish(State.COMPLETED, null, result);
+    }
+
+    void fail(String error) {
+        finish(State.FAILED, error, null);
+    }
+
+    /**
+     * Stops this session's capture only; other scanners and sessions keep running.
+     */
+    public void cancel() {
+        finish(State.CANCELLED, "Scan cancelled", null);
+    }
+
+    /**
+     * Ends the session as timed out, cancelling its capture like {@link #cancel}.
+     */
+    public void timeout() {
+        finish(State.TIMED_OUT, "Timeout waiting for scan", null);
+    }
+
+    public synchronized boolean isFinished() {
+        return state.isTerminal();
+    }
+
+    private synchronized void transition(State next) {
+        if (state.isTerminal()) return;
+        state = next;
+        publish(snapshot());
+    }
+
+    private void finish(State terminal, String error, Map<String, Object> result) {
+        Map<String, Object> current;
+        boolean aborted = terminal == State.CANCELLED || terminal == State.TIMED_OUT;
+        Future<?> queued;
+        synchronized (this) {
+            if (state.isTerminal()) return;
+            state = terminal;
+            this.error = error;
+            this.result = result;
+            current = snapshot();
+            publish(current);
+            subscribers.clear();
+            queued = aborted ? task : null;
+        }
+        if (aborted) cancelActiveCapture();
+        // A capture still waiting in the executor queue is skipped when its turn comes
+        if (queued != null) queued.cancel(false);
+        completion.complete(current);
+    }
+
+    // Runs under captureLock so the client cannot be released to another capture while it is being cancelled
+    private void cancelActiveCapture() {
+        synchronized (captureLock) {
+            if (cancelCapture != null) cancelCapture.run();
+        }
+    }
+
+    private void publish(Map<String, Object> snapshot) {
+        for (Consumer<Map<String, Object>> subscriber : subscribers) {
+            subscriber.accept(snapshot);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package org.neurotecfinger.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.neurotecfinger.device.FingerScanner;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts scans as sessions that run on the bounded capture executor and returns at once, so no request thread
+ * waits for a finger. Callers follow a session by polling, long-polling or Server-Sent Events, and cancel it by id.
+ * Finished sessions are kept for {@code biometric.scan.session-ttl-ms} so late readers still get the result.
+ */
+@Slf4j
+@Service
+public class ScanSessionService {
+
+    @Autowired
+    private ScannerService scannerService;
+
+    @Autowired
+    @Qualifier("captureExecutor")
+    private ExecutorService captureExecutor;
+
+    @Value("${biometric.scan.session-ttl-ms:60000}")
+    private long sessionTtlMs;
+
+    // NFIQ 1.0 runs from 1 (best) to 5 (worst); impressions scoring worse than this are rejected
+    @Value("${biometric.enroll.max-nfiq:3}")
+    private int maxNfiq;
+
+    // Captures allowed per enrollment, including rejected ones (0 = twice the impressions)
+    @Value("${biometric.enroll.max-attempts:0}")
+    private int maxAttempts;
+
+    @Value("${biometric.enroll.max-merged-records:5}")
+    private int maxMergedRecords;
+
+    @Value("${biometric.enroll.impressions:3}")
+    private int defaultImpressions;
+
+    @Value("${biometric.enroll.mode:BEST}")
+    private EnrollmentMode defaultMode;
+
+    private final Map<String, ScanSession> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * @param save      whether the capture is saved and enrolled once it completes; a saved capture always has its
+     *                  template extracted, whatever {@code formats} asks for
+     * @param timeoutMs the capture is cancelled if the session has not finished by then
+     * @throws RejectedExecutionException if the capture queue is full
+     */
+    public ScanSession start(String fingerType, String scannerId, Set<CaptureFormat> formats, boolean save, long timeoutMs) {
+        Set<CaptureFormat> captured = EnumSet.noneOf(CaptureFormat.class);
+        captured.addAll(formats);
+        // A record without a template could never be identified
+        if (save) captured.add(CaptureFormat.TEMPLATE);
+        return submit(new ScanSession(UUID.randomUUID().toString(), fingerType, scannerId, captured, save), scannerId, timeoutMs);
+    }
+
+    /**
+     * Starts an enrollment: captures until {@code impressions} impressions pass the NFIQ gate
+     * ({@code biometric.enroll.max-nfiq}), then saves one record for the finger, holding the best impression or all
+     * of them merged. Fails when the attempts run out first.
+     *
+     * @param impressions null for {@code biometric.enroll.impressions}
+     * @param mode        null for {@code biometric.enroll.mode}
+     * @param timeoutMs   for the whole enrollment, all impressions included
+     * @throws RejectedExecutionException if the capture queue is full
+     */
+    public ScanSession startEnrollment(String fingerType, String scannerId, Integer impressions, EnrollmentMode mode, long timeoutMs) {
+        int required = Math.max(1, impressions != null ? impressions : defaultImpressions);
+        // The template is what gets enrolled; images are kept for the best impression
+        Set<CaptureFormat> formats = EnumSet.allOf(CaptureFormat.class);
+        return submit(new ScanSession(UUID.randomUUID().toString(), fingerType, scannerId, formats, true,
+                mode != null ? mode : defaultMode, required), scannerId, timeoutMs);
+    }
+
+    private ScanSession submit(ScanSession session, String scannerId, long timeoutMs) {
+        sessions.put(session.getId(), session);
+        try {
+            session.setTask(captureExecutor.submit(() -> run(session, scannerId)));
+        } catch (RejectedExecutionException e) {
+            sessions.remove(session.getId());
+            throw e;
+        }
+        CompletableFuture.delayedExecutor(timeoutMs, TimeUnit.MILLISECONDS).execute(session::timeout);
+        session.getCompletion().whenComplete((result, error) ->
+                CompletableFuture.delayedExecutor(sessionTtlMs, TimeUnit.MILLISECONDS).execute(() -> sessions.remove(session.getId())));
+        return session;
+    }
+
+    public Optional<ScanSession> find(String sessionId) {
+        return Optional.ofNullable(sessions.get(sessionId));
+    }
+
+    /**
+     * @return whether a session with that id existed
+     */
+    public boolean cancel(String sessionId) {
+        ScanSession session = sessions.get(sessionId);
+        if (session == null) return false;
+        session.cancel();
+        return true;
+    }
+
+    /**
+     * Cancels the running sessions on one scanner, or all of them when {@code scannerId} is empty.
+     *
+     * @return number of sessions cancelled
+     */
+    public int cancelByScanner(String scannerId) {
+        int cancelled = 0;
+        for (ScanSession session : sessions.values()) {
+            if (session.isFinished()) continue;
+            Object sessionScanner = session.snapshot().get("scannerId");
+            if (scannerId == null || scannerId.isEmpty() || scannerId.equals(sessionScanner)) {
+                session.cancel();
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    public List<Map<String, Object>> list() {
+        List<Map<String, Object>> snapshots = new ArrayList<>();
+        for (ScanSession session : sessions.values()) {
+            snapshots.add(session.snapshot());
+        }
+        return snapshots;
+    }
+
+    private void run(ScanSession session, String scannerId) {
+        if (session.isFinished()) return;
+        if (session.getEnrollment() != null) {
+            enroll(session, scannerId);
+            return;
+        }
+        try {
+            Map<String, Object> fingerDetails = scannerService.scanFinger(session.getFingerType(), scannerId, session.getFormats(), session);
+            // A capture that completes after a timeout or cancel is dropped, as the legacy endpoint did
+            if (session.isFinished()) return;
+            Map<String, Object> result = toBase64Fields(fingerDetails);
+            if (session.isSave()) {
+                long id = scannerService.saveFingerprintData(
+                        session.getFingerType(),
+                        (byte[]) fingerDetails.get("WSQImage"),
+                        (byte[]) fingerDetails.get("BMPBase64"),
+                        (byte[]) fingerDetails.get("NativeTemplate"),
+                        (Integer) fingerDetails.get("NFIQ")
+                );
+                log.info("ENROLL: Saved {} as record {}.", session.getFingerType(), id);
+                // Lets clients fetch the stored images later (/api/fingerprints/{id}/image) instead of keeping Base64
+                result.put("id", String.valueOf(id));
+            }
+            session.complete(result);
+        } catch (Exception e) {
+            if (!session.isFinished()) {
+                log.warn("Scan session {} failed", session.getId(), e);
+            }
+            String message = e.getMessage();
+            session.fail(message != null ? message.split("\\r")[0] : "Unknown Error");
+        }
+    }
+
+    private void enroll(ScanSession session, String scannerId) {
+        try {
+            List<Map<String, Object>> accepted = new ArrayList<>();
+            int attemptsLeft = maxAttempts > 0 ? maxAttempts : session.getImpressions() * 2;
+            // Every impression comes from the same device, which no other scan can take until the last one is in
+            FingerScanner scanner = scannerService.acquireScanner(scannerId);
+            try {
+                while (accepted.size() < session.getImpressions()) {
+                    if (attemptsLeft-- == 0) {
+                        session.fail("Only " + accepted.size() + " of " + session.getImpressions()
+                                + " impressions reached NFIQ " + maxNfiq + " or better");
+                        return;
+                    }
+                    Map<String, Object> impression = scannerService.scanFinger(scanner, session.getFormats(), session);
+                    if (session.isFinished()) return;
+                    int nfiq = (Integer) impression.get("NFIQ");
+                    byte[] template = (byte[]) impression.get("NativeTemplate");
+                    // 0 means quality could not be assessed
+                    boolean passed = nfiq > 0 && nfiq <= maxNfiq && template != null && template.length > 0;
+                    session.impressionAssessed(passed);
+                    if (passed) accepted.add(impression);
+                    else log.info("ENROLL: Rejected {} impression with NFIQ {}", session.getFingerType(), nfiq);
+                }
+            } finally {
+                scannerService.releaseScanner(scanner);
+            }
+
+            accepted.sort(Comparator.comparingInt(impression -> (Integer) impression.get("NFIQ")));
+            Map<String, Object> best = accepted.get(0);
+            byte[] template = (byte[]) best.get("NativeTemplate");
+            if (session.getEnrollment() == EnrollmentMode.MERGE && accepted.size() > 1) {
+                List<byte[]> templates = new ArrayList<>(accepted.size());
+                for (Map<String, Object> impression : accepted) {
+                    templates.add((byte[]) impression.get("NativeTemplate"));
+                }
+                template = scannerService.mergeTemplates(templates, maxMergedRecords);
+            }
+            if (session.isFinished()) return;
+            long id = scannerService.saveFingerprintData(
+                    session.getFingerType(),
+                    (byte[]) best.get("WSQImage"),
+                    (byte[]) best.get("BMPBase64"),
+                    template,
+                    (Integer) best.get("NFIQ")
+            );
+            log.info("ENROLL: Saved {} as record {} from {} impressions ({})", session.getFingerType(), id, accepted.size(), session.getEnrollment());
+
+            Map<String, Object> result = toBase64Fields(best);
+            result.put("NativeTemplate", Base64.getEncoder().encodeToString(template));
+            result.put("id", String.valueOf(id));
+            result.put("impressions", accepted.size());
+            session.complete(result);
+        } catch (Exception e) {
+            if (!session.isFinished()) {
+                log.warn("Enrollment session {} failed", session.getId(), e);
+            }
+            String message = e.getMessage();
+            session.fail(message != null ? message.split("\\r")[0] : "Unknown Error");
+        }
+    }
+
+    // Raw bytes become Base64 strings only here, when the result is handed to clients
+    private static Map<String, Object> toBase64Fields(Map<String, Object> details) {
+        Map<String, Object> encoded = new HashMap<>(details);
+        for (Map.Entry<String, Object> entry : encoded.entrySet()) {
+            if (entry.getValue() instanceof byte[]) {
+                entry.setValue(Base64.getEncoder().encodeToString((byte[]) entry.getValue()));
+            }
+        }
+        return encoded;
+    }
+}
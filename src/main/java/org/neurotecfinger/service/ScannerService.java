@@ -2,149 +2,297 @@ package org.neurotecfinger.service;
 
 import com.neurotec.biometrics.*;
 import com.neurotec.biometrics.client.NBiometricClient;
-import com.neurotec.devices.NDeviceManager;
-import com.neurotec.devices.NDeviceType;
-import com.neurotec.devices.NFScanner;
 import com.neurotec.images.NImage;
 import com.neurotec.images.NImageFormat;
 import com.neurotec.images.WSQInfo;
 import com.neurotec.io.NBuffer;
 import com.neurotec.util.NVersion;
+import lombok.extern.slf4j.Slf4j;
+import org.neurotecfinger.device.FingerScanner;
+import org.neurotecfinger.device.ScannerRegistry;
+import org.neurotecfinger.matching.GalleryTemplate;
+import org.neurotecfinger.matching.IdentifyOptions;
+import org.neurotecfinger.matching.MatchCandidate;
+import org.neurotecfinger.matching.TemplateVerifier;
+import org.neurotecfinger.metrics.BiometricMetrics;
+import org.neurotecfinger.metrics.BiometricStage;
 import org.neurotecfinger.model.FingerprintEntity;
+import org.neurotecfinger.model.FingerprintImage;
+import org.neurotecfinger.model.FingerprintSummaryView;
+import org.neurotecfinger.model.FingerprintTemplateView;
+import org.neurotecfinger.pool.BiometricEnginePools;
+import org.neurotecfinger.pool.BiometricRole;
+import org.neurotecfinger.pool.EnginePool;
+import org.neurotecfinger.repository.FingerprintIdAllocator;
+import org.neurotecfinger.repository.FingerprintImageRepository;
 import org.neurotecfinger.repository.FingerprintRepository;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+@Slf4j
 @Service
 public class ScannerService {
 
     @Autowired
-    private NBiometricClient client;
+    private BiometricEnginePools<NBiometricClient> enginePools;
 
     @Autowired
     private FingerprintRepository fingerprintRepository;
 
-    private final AtomicBoolean currentWorking = new AtomicBoolean(false);
+    @Autowired
+    private FingerprintImageRepository fingerprintImageRepository;
+
+    @Autowired
+    private FingerprintIdAllocator idAllocator;
+
+    @Autowired
+    private FingerprintGallery gallery;
+
+    @Autowired
+    private FingerprintWriter fingerprintWriter;
+
+    @Autowired
+    private ScannerRegistry scannerRegistry;
+
+    @Autowired
+    private BiometricMetrics metrics;
+
+    @Autowired
+    private TemplateVerifier templateVerifier;
+
+    @Value("${biometric.matching.threshold:50}")
+    private int matchingThreshold;
+
+    @Autowired
+    @Qualifier("imageEncodingExecutor")
+    private ExecutorService imageEncodingExecutor;
+
+    // One lock per scanner id, so different scanners capture concurrently
+    private final Map<String, AtomicBoolean> scannerLocks = new ConcurrentHashMap<>();
 
-    @Async
-    public CompletableFuture<Map<String, Object>> scanFinger(String fingerType) throws Exception {
-        // 1. Check Lock (Matches AtomicBoolean logic)
-        if (!currentWorking.compareAndSet(false, true)) {
-            throw new RuntimeException("You are already trying to read a fingerprint, try after completing that one");
+    /**
+     * Captures on the given scanner, or on the first idle scanner when {@code scannerId} is null, on the calling
+     * thread. Only the requested outputs are produced; NFIQ is always reported. Scan sessions run this on the
+     * capture executor, see {@link ScanSessionService}.
+     */
+    public Map<String, Object> scanFinger(String fingerType, String scannerId, Set<CaptureFormat> formats, ScanListener listener) throws Exception {
+        FingerScanner scanner = acquireScanner(scannerId);
+        try {
+            return scanFinger(scanner, formats, listener);
+        } finally {
+            releaseScanner(scanner);
         }
+    }
+
+    /**
+     * Selects and locks a scanner for a series of captures, e.g. the impressions of one enrollment, so no other scan
+     * can take it in between. Pass it to {@link #scanFinger(FingerScanner, Set, ScanListener)} and always
+     * {@link #releaseScanner release} it.
+     *
+     * @param scannerId null for the first idle scanner
+     * @throws RuntimeException if no scanner is connected or the requested one is busy
+     */
+    public FingerScanner acquireScanner(String scannerId) throws Exception {
+        // Select Scanner and take its lock (Matches AtomicBoolean logic, per device)
+        return metrics.time(BiometricStage.DEVICE_SELECTION, () -> lockScanner(scannerId));
+    }
 
+    public void releaseScanner(FingerScanner scanner) {
+        lockFor(scanner.getId()).set(false);
+    }
+
+    /**
+     * Captures on a scanner taken with {@link #acquireScanner}; the caller keeps holding its lock.
+     */
+    public Map<String, Object> scanFinger(FingerScanner scanner, Set<CaptureFormat> formats, ScanListener listener) throws Exception {
         NSubject subject = new NSubject();
         NFinger finger = new NFinger();
         subject.getFingers().add(finger);
+        EnginePool<NBiometricClient> capturePool = enginePools.get(BiometricRole.CAPTURE);
+        NBiometricClient client = null;
+        Future<byte[]> pngFuture = null;
+        Future<byte[]> wsqFuture = null;
 
         try {
-            // 2. Select Scanner
-            selectScanner();
+            client = capturePool.borrow();
+            NBiometricClient captureClient = client;
+            if (!listener.onScannerAcquired(scanner.getId(), captureClient::cancel)) {
+                // Never start a capture nobody waits for: it would hold the device until a finger is placed
+                throw new CancellationException("Scan abandoned before the capture started");
+            }
 
-            // 3. Capture
-            System.out.println("Capturing....");
-            NBiometricStatus status = client.capture(subject);
+            // 2. Capture
+            log.debug("Capturing on {}", scanner.getDisplayName());
+            NBiometricStatus status = metrics.time(BiometricStage.CAPTURE, () -> scanner.capture(captureClient, subject));
             if (status != NBiometricStatus.OK) {
                 throw new RuntimeException("Failed to capture: " + status);
             }
+            listener.onFingerCaptured();
 
-            // 4. Process Image (Save as PNG bytes -> BMPBase64 key)
+            // 3. Encode images on the encoding pool while the template is extracted here.
             // Note: Old code writes "png" format but assigns it to a key called "BMPBase64". We preserve this behavior.
             NImage nImage = subject.getFingers().get(0).getImage();
-            java.awt.Image awtImage = nImage.toImage();
-            BufferedImage bufferedImage;
-            if (awtImage instanceof BufferedImage) {
-                bufferedImage = (BufferedImage) awtImage;
-            } else {
-                // Convert generic Image to BufferedImage
-                bufferedImage = new BufferedImage(awtImage.getWidth(null), awtImage.getHeight(null), BufferedImage.TYPE_INT_ARGB);
-                java.awt.Graphics2D g = bufferedImage.createGraphics();
-                g.drawImage(awtImage, 0, 0, null);
-                g.dispose();
-            }
-            ByteArrayOutputStream pngStream = new ByteArrayOutputStream();
-            ImageIO.write(bufferedImage, "png", pngStream);
-            String imageEncoded = Base64.getEncoder().encodeToString(pngStream.toByteArray());
-            System.out.println("Fingerprint image processed...");
-
-            // WSQ
-            WSQInfo info = (WSQInfo) NImageFormat.getWSQ().createInfo(nImage);
-            info.setBitRate(WSQInfo.DEFAULT_BIT_RATE);
-            NBuffer wsqBuffer = nImage.save(info);
-            String templateEncoded = Base64.getEncoder().encodeToString(wsqBuffer.toByteArray());
-
-            //Biometric Feature Extraction
-            NBiometricTask extractionTask = client.createTask(
-                    EnumSet.of(NBiometricOperation.CREATE_TEMPLATE, NBiometricOperation.ASSESS_QUALITY),
-                    subject
-            );
-            client.performTask(extractionTask);
-            String nativeTemplateBase64 = "";
-
-
-            NBiometricTask task = client.createTask(EnumSet.of(NBiometricOperation.ASSESS_QUALITY), subject);
-            client.performTask(task);
+            pngFuture = formats.contains(CaptureFormat.PNG)
+                    ? imageEncodingExecutor.submit(metrics.inCurrentTrace(() -> metrics.time(BiometricStage.PNG_ENCODE, () -> encodePng(nImage))))
+                    : null;
+            wsqFuture = formats.contains(CaptureFormat.WSQ)
+                    ? imageEncodingExecutor.submit(metrics.inCurrentTrace(() -> metrics.time(BiometricStage.WSQ_ENCODE, () -> encodeWsq(nImage))))
+                    : null;
+
+            // 4. Biometric Feature Extraction and NFIQ in a single task
+            EnumSet<NBiometricOperation> operations = formats.contains(CaptureFormat.TEMPLATE)
+                    ? EnumSet.of(NBiometricOperation.CREATE_TEMPLATE, NBiometricOperation.ASSESS_QUALITY)
+                    : EnumSet.of(NBiometricOperation.ASSESS_QUALITY);
+            NBiometricTask extractionTask = client.createTask(operations, subject);
+            metrics.record(BiometricStage.TEMPLATE_EXTRACTION, () -> captureClient.performTask(extractionTask));
+            byte[] nativeTemplate = new byte[0];
+            int nfiq = 0;
             if (extractionTask.getStatus() == NBiometricStatus.OK) {
-                NBuffer templateBuffer = subject.getTemplateBuffer(); // This is the extracted feature set
-                if (templateBuffer != null) {
-                    nativeTemplateBase64 = Base64.getEncoder().encodeToString(templateBuffer.toByteArray());
-                    System.out.println("Feature Extraction Successful.");
+                if (formats.contains(CaptureFormat.TEMPLATE)) {
+                    NBuffer templateBuffer = subject.getTemplateBuffer(); // This is the extracted feature set
+                    if (templateBuffer != null) {
+                        nativeTemplate = templateBuffer.toByteArray();
+                        log.debug("Feature Extraction Successful.");
+                    }
                 }
+                nfiq = subject.getFingers().get(0).getObjects().get(0).getNFIQ(new NVersion(1, 0));
+                log.debug("Finger NFIQ is: {}", nfiq);
             }
             else {
-                System.err.println("Feature Extraction Failed: " + extractionTask.getStatus());
-            }
-            int nfiq = 0;
-            if (task.getStatus() == NBiometricStatus.OK) {
-                nfiq = subject.getFingers().get(0).getObjects().get(0).getNFIQ(new NVersion(1, 0));
-                System.out.format("Finger NFIQ is: %s\n", nfiq);
+                log.warn("Feature Extraction Failed: {}", extractionTask.getStatus());
             }
+            listener.onExtracted(nfiq, nativeTemplate.length);
 
-//            saveFingerprintData(fingerType, templateEncoded, imageEncoded, nativeTemplateBase64, nfiq);
+            // Raw bytes; Base64 is applied only when the controller writes the JSON response
             Map<String, Object> result = new HashMap<>();
-            result.put("WSQImage", templateEncoded);
-            result.put("BMPBase64", imageEncoded);
+            if (wsqFuture != null) result.put("WSQImage", wsqFuture.get());
+            if (pngFuture != null) result.put("BMPBase64", pngFuture.get());
             result.put("NFIQ", nfiq);
-            result.put("NativeTemplate", nativeTemplateBase64);
-            System.out.println("NativeTemplate from scan finger:  " + nativeTemplateBase64);
-            return CompletableFuture.completedFuture(result);
+            if (formats.contains(CaptureFormat.TEMPLATE)) result.put("NativeTemplate", nativeTemplate);
+            result.put("scannerId", scanner.getId());
+            log.debug("NativeTemplate from scan finger: {} bytes", nativeTemplate.length);
+            return result;
 
         } catch (Exception e) {
             // Pass exception to controller
             throw e;
         } finally {
+            awaitQuietly(pngFuture);
+            awaitQuietly(wsqFuture);
             subject.dispose();
             finger.dispose();
-            currentWorking.set(false);
+            // The pooled client may serve another capture next; its cancel handle must be dropped first
+            if (client != null) listener.onCaptureReleased();
+            capturePool.release(client);
+        }
+    }
+
+    // PNG straight from the native image buffer: keeps the scanner's grayscale format, no AWT round trip
+    private static byte[] encodePng(NImage nImage) {
+        NBuffer pngBuffer = nImage.save(NImageFormat.getPNG());
+        return pngBuffer.toByteArray();
+    }
+
+    private static byte[] encodeWsq(NImage nImage) {
+        WSQInfo info = (WSQInfo) NImageFormat.getWSQ().createInfo(nImage);
+        info.setBitRate(WSQInfo.DEFAULT_BIT_RATE);
+        NBuffer wsqBuffer = nImage.save(info);
+        return wsqBuffer.toByteArray();
+    }
+
+    // Encoders still reading the native image must finish before it is disposed
+    private static void awaitQuietly(Future<?> future) {
+        if (future == null) return;
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Already reported through the result, or irrelevant because capture failed
         }
     }
 
-    public void cancelScanner() {
-        client.cancel();
-        currentWorking.set(false);
+    private FingerScanner lockScanner(String scannerId) {
+        List<FingerScanner> scanners = scannerRegistry.getScanners();
+        if (scanners.isEmpty()) {
+            throw new RuntimeException("There are no devices connected to read the fingerprint"); // Matches old 500 error message
+        }
+        if (scannerId != null && !scannerId.isEmpty()) {
+            FingerScanner scanner = scannerRegistry.find(scannerId)
+                    .orElseThrow(() -> new RuntimeException("Scanner not found: " + scannerId));
+            if (!lockFor(scanner.getId()).compareAndSet(false, true)) {
+                throw new RuntimeException("You are already trying to read a fingerprint on this scanner, try after completing that one");
+            }
+            return scanner;
+        }
+        // No scanner requested: take the first idle one
+        for (FingerScanner scanner : scanners) {
+            if (lockFor(scanner.getId()).compareAndSet(false, true)) {
+                return scanner;
+            }
+        }
+        throw new RuntimeException("You are already trying to read a fingerprint, try after completing that one");
+    }
+
+    private AtomicBoolean lockFor(String scannerId) {
+        return scannerLocks.computeIfAbsent(scannerId, id -> new AtomicBoolean(false));
+    }
+
+    public int busyScannerCount() {
+        int busy = 0;
+        for (AtomicBoolean lock : scannerLocks.values()) {
+            if (lock.get()) busy++;
+        }
+        return busy;
     }
 
     public boolean isScanning() {
-        return currentWorking.get();
+        for (AtomicBoolean lock : scannerLocks.values()) {
+            if (lock.get()) return true;
+        }
+        return false;
+    }
+
+    public List<Map<String, Object>> listScanners() {
+        List<Map<String, Object>> scanners = new ArrayList<>();
+        for (FingerScanner scanner : scannerRegistry.getScanners()) {
+            Map<String, Object> info = new HashMap<>();
+            info.put("id", scanner.getId());
+            info.put("displayName", scanner.getDisplayName());
+            info.put("busy", lockFor(scanner.getId()).get());
+            scanners.add(info);
+        }
+        return scanners;
     }
 
-    // New helper: extract template from raw image bytes and return Base64 template string
-    public String extractTemplateFromImageBytes(byte[] imageBytes) throws Exception {
-        if (imageBytes == null || imageBytes.length == 0) return "";
+    public List<Map<String, Object>> refreshScanners() {
+        scannerRegistry.refresh();
+        return listScanners();
+    }
+
+    // New helper: extract template from raw image bytes and return the native template bytes (empty on failure)
+    public byte[] extractTemplateFromImageBytes(byte[] imageBytes) throws Exception {
+        if (imageBytes == null || imageBytes.length == 0) return new byte[0];
         NSubject subject = null;
         NFinger finger = null;
         NImage nImage = null;
+        EnginePool<NBiometricClient> extractionPool = enginePools.get(BiometricRole.EXTRACTION);
+        NBiometricClient client = null;
         try {
+            client = extractionPool.borrow();
             nImage = NImage.fromMemory(new NBuffer(imageBytes));
             subject = new NSubject();
             finger = new NFinger();
@@ -152,99 +300,151 @@ public class ScannerService {
             subject.getFingers().add(finger);
 
             NBiometricTask extractionTask = client.createTask(EnumSet.of(NBiometricOperation.CREATE_TEMPLATE), subject);
-            client.performTask(extractionTask);
+            NBiometricClient extractionClient = client;
+            metrics.record(BiometricStage.TEMPLATE_EXTRACTION, () -> extractionClient.performTask(extractionTask));
             if (extractionTask.getStatus() == NBiometricStatus.OK) {
                 NBuffer templateBuffer = subject.getTemplateBuffer();
                 if (templateBuffer != null) {
-                    return Base64.getEncoder().encodeToString(templateBuffer.toByteArray());
+                    return templateBuffer.toByteArray();
                 }
             } else {
-                System.err.println("Template extraction failed: " + extractionTask.getStatus());
+                log.warn("Template extraction failed: {}", extractionTask.getStatus());
             }
-            return "";
+            return new byte[0];
         } finally {
             if (subject != null) subject.dispose();
             if (finger != null) finger.dispose();
             if (nImage != null) nImage.dispose();
+            extractionPool.release(client);
         }
     }
 
-    private String extractTemplateFromSubject(NSubject subject) {
-        NBiometricTask extractionTask = client.createTask(EnumSet.of(NBiometricOperation.CREATE_TEMPLATE, NBiometricOperation.ASSESS_QUALITY), subject);
-        client.performTask(extractionTask);
-        if (extractionTask.getStatus() == NBiometricStatus.OK) {
-            NBuffer buffer = subject.getTemplateBuffer();
-            if (buffer != null) {
-                return Base64.getEncoder().encodeToString(buffer.toByteArray());
+    /**
+     * Combines impressions of one finger into a single template that keeps each of them as its own finger record,
+     * in the given order, up to {@code maxRecords}. Matching such a template scores the probe against every record.
+     * Templates that already hold several records contribute all of them.
+     */
+    public byte[] mergeTemplates(List<byte[]> templates, int maxRecords) {
+        NTemplate merged = new NTemplate();
+        NFTemplate records = new NFTemplate();
+        try {
+            merged.setFingers(records);
+            for (byte[] template : templates) {
+                NTemplate source = new NTemplate(new NBuffer(template));
+                try {
+                    NFTemplate sourceRecords = source.getFingers();
+                    if (sourceRecords == null) continue;
+                    for (NFRecord record : sourceRecords.getRecords()) {
+                        if (records.getRecords().size() >= maxRecords) break;
+                        records.getRecords().add(new NFRecord(record.save()));
+                    }
+                } finally {
+                    source.dispose();
+                }
             }
+            return merged.save().toByteArray();
+        } finally {
+            records.dispose();
+            merged.dispose();
         }
-        return null;
+    }
+
+    private byte[] extractTemplateFromSubject(NSubject subject) throws Exception {
+        return enginePools.get(BiometricRole.EXTRACTION).execute(client -> {
+            NBiometricTask extractionTask = client.createTask(EnumSet.of(NBiometricOperation.CREATE_TEMPLATE, NBiometricOperation.ASSESS_QUALITY), subject);
+            client.performTask(extractionTask);
+            if (extractionTask.getStatus() == NBiometricStatus.OK) {
+                NBuffer buffer = subject.getTemplateBuffer();
+                if (buffer != null) {
+                    return buffer.toByteArray();
+                }
+            }
+            return null;
+        });
     }
 
     /**
      * SERVICE METHOD 2: IDENTIFY WITH DATABASE
-     * Matches the probe template against all records in Postgres.
+     * Matches the probe template against the in-memory gallery loaded from Postgres.
+     */
+    public Map<String, Object> identify(byte[] probeTemplate) {
+        return identify(probeTemplate, Collections.emptyList());
+    }
+
+    /**
+     * Same as {@link #identify(byte[])}, restricted to the gallery buckets of the given finger types.
+     */
+    public Map<String, Object> identify(byte[] probeTemplate, Collection<String> fingerTypes) {
+        return identify(probeTemplate, fingerTypes, null);
+    }
+
+    /**
+     * Returns the ranked candidates with their metadata, plus the best one in the legacy top-level fields
+     * ({@code suspectId}, {@code score}, {@code fingerType}, {@code originalQuality}).
+     *
+     * @param options per-request k, threshold and speed; null uses the configured defaults
      */
-    public Map<String, Object> identify(String probeTemplateBase64) {
+    public Map<String, Object> identify(byte[] probeTemplate, Collection<String> fingerTypes, IdentifyOptions options) {
         Map<String, Object> response = new HashMap<>();
         response.put("matchFound", false);
-        System.out.println("Here at the identify service method");
-        if (probeTemplateBase64 == null) return response;
+        response.put("candidates", Collections.emptyList());
+        if (probeTemplate == null || probeTemplate.length == 0) return response;
 
         try {
-            // 1. Prepare Probe (The scanned finger)
-            NSubject probe = new NSubject();
-            probe.setTemplateBuffer(new NBuffer(Base64.getDecoder().decode(probeTemplateBase64)));
-
-            // 2. Prepare Gallery (Load ALL from DB)
-            List<FingerprintEntity> dbRecords = fingerprintRepository.findAll();
-            if (dbRecords.isEmpty()) {
+            if (gallery.size() == 0) {
                 response.put("error", "Database is empty.");
                 return response;
             }
 
-            // 3. Enroll DB records into Matcher Engine
-            NBiometricTask enrollTask = client.createTask(EnumSet.of(NBiometricOperation.ENROLL), null);
-            for (FingerprintEntity record : dbRecords) {
-                if (record.getNativeTemplate() != null) {
-                    NSubject candidate = new NSubject();
-                    candidate.setId(String.valueOf(record.getId())); // ID is key
-                    candidate.setTemplateBuffer(new NBuffer(Base64.getDecoder().decode(record.getNativeTemplate())));
-                    enrollTask.getSubjects().add(candidate);
+            // Match against the long-lived gallery; nothing is reloaded or enrolled per call
+            List<MatchCandidate> candidates = options != null
+                    ? gallery.identify(probeTemplate, fingerTypes, options)
+                    : gallery.identify(probeTemplate, fingerTypes);
+            log.debug("Matching results count: {}", candidates.size());
+            if (!candidates.isEmpty()) {
+                // Metadata of all candidates in one query instead of a findById per result
+                List<Long> ids = new ArrayList<>(candidates.size());
+                for (MatchCandidate candidate : candidates) {
+                    ids.add(candidate.getId());
                 }
-            }
-            client.performTask(enrollTask);
-
-            // 4. Match
-            NBiometricTask identifyTask = client.createTask(EnumSet.of(NBiometricOperation.IDENTIFY), probe);
-            client.performTask(identifyTask);
-
-            // 5. Result
-            if (identifyTask.getStatus() == NBiometricStatus.OK) {
-                System.out.println("Identification successful, checking results..."+"\n" +
-                        "Status: " + identifyTask.getStatus()+"\n" +
-                        "Matching results count: " + probe.getMatchingResults().size());
-                for (NMatchingResult result : probe.getMatchingResults()) {
-                    response.put("matchFound", true);
-                    response.put("suspectId", result.getId());
-                    response.put("score", result.getScore());
-
-                    // Fetch full details to show name/finger type
-                    Optional<FingerprintEntity> entity = fingerprintRepository.findById(Long.valueOf(result.getId()));
-                    entity.ifPresent(e -> {
-                        response.put("fingerType", e.getFingerType());
-                        response.put("originalQuality", e.getQuality());
-                    });
-                    break; // Return best match only
+                Map<Long, FingerprintSummaryView> summaries = new HashMap<>();
+                for (FingerprintSummaryView summary : fingerprintRepository.findByIdIn(ids, FingerprintSummaryView.class)) {
+                    summaries.put(summary.getId(), summary);
+                }
+                // The gallery matches records accepted moments ago, before their row is written
+                for (Long id : ids) {
+                    if (summaries.containsKey(id)) continue;
+                    fingerprintWriter.pending(id).ifPresent(pending -> summaries.put(id, summaryOf(pending.getFingerprint())));
+                }
+
+                List<Map<String, Object>> ranked = new ArrayList<>(candidates.size());
+                for (MatchCandidate candidate : candidates) {
+                    Map<String, Object> entry = new HashMap<>();
+                    entry.put("id", String.valueOf(candidate.getId()));
+                    entry.put("score", candidate.getScore());
+                    FingerprintSummaryView summary = summaries.get(candidate.getId());
+                    if (summary != null) {
+                        entry.put("fingerType", summary.getFingerType());
+                        entry.put("quality", summary.getQuality());
+                        entry.put("createdAt", summary.getCreatedAt());
+                    }
+                    ranked.add(entry);
+                }
+                response.put("candidates", ranked);
+
+                MatchCandidate best = candidates.get(0);
+                response.put("matchFound", true);
+                response.put("suspectId", String.valueOf(best.getId()));
+                response.put("score", best.getScore());
+                FingerprintSummaryView bestSummary = summaries.get(best.getId());
+                if (bestSummary != null) {
+                    response.put("fingerType", bestSummary.getFingerType());
+                    response.put("originalQuality", bestSummary.getQuality());
                 }
             }
-            else{
-                System.out.println("Nbiometrics status not OK: " + identifyTask.getStatus());
-            }
-            client.clear(); // Clear memory
 
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Identification failed", e);
             response.put("error", e.getMessage());
         }
         return response;
@@ -252,34 +452,132 @@ public class ScannerService {
     /**
      * Ports logic for /getWsqFromBmp
      */
-    public String convertBmpToWsq(MultipartFile file) throws IOException {
+    public byte[] convertBmpToWsq(MultipartFile file) throws IOException {
         // NBuffer.fromBinary(...) does not exist in this SDK; use the byte[] constructor
         NImage nImage = NImage.fromMemory(new NBuffer(file.getBytes()));
-        WSQInfo info = (WSQInfo) NImageFormat.getWSQ().createInfo(nImage);
-        info.setBitRate(WSQInfo.DEFAULT_BIT_RATE);
-        NBuffer wsqBuffer = nImage.save(info);
-        return Base64.getEncoder().encodeToString(wsqBuffer.toByteArray());
+        try {
+            return encodeWsq(nImage);
+        } finally {
+            nImage.dispose();
+        }
     }
 
-    private void selectScanner() throws Exception {
-        NDeviceManager deviceManager = client.getDeviceManager();
-        deviceManager.setDeviceTypes(EnumSet.of(NDeviceType.FINGER_SCANNER));
-        deviceManager.initialize();
+    /**
+     * 1:1 verification of a probe against the claimed records only; the gallery is not searched.
+     *
+     * @param ids       claimed record ids, e.g. all fingers of one person; the best score decides
+     * @param threshold decision threshold; values below the configured matching threshold are raised to it,
+     *                  since the SDK reports no scores under that one
+     */
+    public Map<String, Object> verify(byte[] probeTemplate, Collection<Long> ids, Integer threshold) {
+        Map<String, Object> response = new HashMap<>();
+        int effectiveThreshold = threshold != null ? Math.max(threshold, matchingThreshold) : matchingThreshold;
+        response.put("verified", false);
+        response.put("threshold", effectiveThreshold);
+        if (probeTemplate == null || probeTemplate.length == 0 || ids.isEmpty()) return response;
 
-        if (deviceManager.getDevices().isEmpty()) {
-            throw new RuntimeException("There are no devices connected to read the fingerprint"); // Matches old 500 error message
+        try {
+            List<GalleryTemplate> references = new ArrayList<>(ids.size());
+            Set<Long> missing = new LinkedHashSet<>(ids);
+            for (FingerprintTemplateView record : fingerprintRepository.findByIdIn(ids, FingerprintTemplateView.class)) {
+                missing.remove(record.getId());
+                if (record.getNativeTemplate() == null || record.getNativeTemplate().length == 0) continue;
+                references.add(new GalleryTemplate(record.getId(), record.getFingerType(), record.getQuality(), record.getNativeTemplate()));
+            }
+            // Records accepted moments ago may not be written yet
+            for (Iterator<Long> it = missing.iterator(); it.hasNext(); ) {
+                Optional<FingerprintImage> pending = fingerprintWriter.pending(it.next());
+                if (!pending.isPresent()) continue;
+                it.remove();
+                FingerprintEntity record = pending.get().getFingerprint();
+                if (record.getNativeTemplate().length == 0) continue;
+                references.add(new GalleryTemplate(record.getId(), record.getFingerType(), record.getQuality(), record.getNativeTemplate()));
+            }
+            if (!missing.isEmpty()) response.put("missingIds", missing);
+            if (references.isEmpty()) {
+                response.put("error", "No template found for the given ids.");
+                return response;
+            }
+
+            List<MatchCandidate> scores = metrics.time(BiometricStage.VERIFY, () -> templateVerifier.verify(probeTemplate, references));
+            List<Map<String, Object>> results = new ArrayList<>(scores.size());
+            MatchCandidate best = null;
+            for (MatchCandidate score : scores) {
+                Map<String, Object> result = new HashMap<>();
+                result.put("id", String.valueOf(score.getId()));
+                result.put("score", score.getScore());
+                results.add(result);
+                if (best == null || score.getScore() > best.getScore()) best = score;
+            }
+            response.put("results", results);
+            response.put("score", best.getScore());
+            response.put("bestId", String.valueOf(best.getId()));
+            response.put("verified", best.getScore() >= effectiveThreshold);
+        } catch (Exception e) {
+            log.error("Verification failed", e);
+            response.put("error", e.getMessage());
         }
-        // Auto-select first device
-        client.setFingerScanner((NFScanner) deviceManager.getDevices().get(0));
+        return response;
     }
-    public void saveFingerprintData(String fingerType, String wsq, String bmp, String nativeTemplate, int quality) {
+
+    /**
+     * Identifiable at once; the database write happens behind (see FingerprintWriter).
+     *
+     * @return id of the new record
+     */
+    public long saveFingerprintData(String fingerType, byte[] wsq, byte[] image, byte[] nativeTemplate, int quality) {
+        FingerprintImage record = newRecord(fingerType, wsq, image, nativeTemplate, quality);
+        fingerprintWriter.save(record);
+        return record.getFingerprint().getId();
+    }
+
+    /**
+     * Builds an unsaved fingerprint and its image row with a freshly allocated id.
+     */
+    public FingerprintImage newRecord(String fingerType, byte[] wsq, byte[] image, byte[] nativeTemplate, int quality) {
         FingerprintEntity entity = new FingerprintEntity();
+        entity.setId(idAllocator.next());
         entity.setFingerType(fingerType != null ? fingerType : "");
-        entity.setWsqData(wsq != null ? wsq : "");
-        entity.setBmpBase64(bmp != null ? bmp : "");
         // Ensure nativeTemplate is not null to satisfy DB not-null constraint
-        entity.setNativeTemplate(nativeTemplate != null ? nativeTemplate : "");
+        entity.setNativeTemplate(nativeTemplate != null ? nativeTemplate : new byte[0]);
         entity.setQuality(quality);
-        fingerprintRepository.save(entity);
+        // Set now rather than on insert, so a record still queued for the write reports the same time
+        entity.setCreatedAt(LocalDateTime.now());
+
+        FingerprintImage images = new FingerprintImage();
+        images.setFingerprint(entity);
+        images.setWsqData(wsq != null ? wsq : new byte[0]);
+        images.setImageData(image != null ? image : new byte[0]);
+        return images;
+    }
+
+    private static FingerprintSummaryView summaryOf(FingerprintEntity record) {
+        return new FingerprintSummaryView() {
+            @Override
+            public long getId() {
+                return record.getId();
+            }
+
+            @Override
+            public String getFingerType() {
+                return record.getFingerType();
+            }
+
+            @Override
+            public Integer getQuality() {
+                return record.getQuality();
+            }
+
+            @Override
+            public LocalDateTime getCreatedAt() {
+                return record.getCreatedAt();
+            }
+        };
+    }
+
+    // Image payloads are loaded on demand only, never as part of identification
+    public Optional<FingerprintImage> findImage(long fingerprintId) {
+        Optional<FingerprintImage> pending = fingerprintWriter.pending(fingerprintId);
+        return pending.isPresent() ? pending : fingerprintImageRepository.findById(fingerprintId);
     }
 }
@@ -0,0 +1,18 @@
+-- Moves the PNG/WSQ payloads out of fingerprint_entity into fingerprint_image.
+-- Run once against an existing database before starting the new version (ddl-auto=update creates the table,
+-- but it never copies data or drops the old columns).
+
+CREATE TABLE IF NOT EXISTS fingerprint_image (
+    fingerprint_id bigint PRIMARY KEY REFERENCES fingerprint_entity (id),
+    bmp_base64     text,
+    wsq_data       text
+);
+
+INSERT INTO fingerprint_image (fingerprint_id, bmp_base64, wsq_data)
+SELECT id, bmp_base64, wsq_data
+FROM fingerprint_entity
+ON CONFLICT (fingerprint_id) DO NOTHING;
+
+ALTER TABLE fingerprint_entity
+    DROP COLUMN IF EXISTS bmp_base64,
+    DROP COLUMN IF EXISTS wsq_data;
@@ -0,0 +1,11 @@
+-- Converts the Base64 text columns to raw bytea.
+-- Run once after migrate-001; existing rows are decoded in place.
+
+ALTER TABLE fingerprint_entity
+    ALTER COLUMN native_template TYPE bytea USING decode(native_template, 'base64');
+
+ALTER TABLE fingerprint_image RENAME COLUMN bmp_base64 TO image_data;
+
+ALTER TABLE fingerprint_image
+    ALTER COLUMN image_data TYPE bytea USING decode(image_data, 'base64'),
+    ALTER COLUMN wsq_data TYPE bytea USING decode(wsq_data, 'base64');
@@ -0,0 +1,38 @@
+-- Change feed tailed by every node's gallery (biometric.gallery.sync.enabled=true).
+-- Run once; the trigger records inserts, template updates and deletes made by any writer
+-- and notifies listeners on the 'fingerprint_change' channel when the transaction commits.
+
+CREATE TABLE IF NOT EXISTS fingerprint_change (
+    seq            bigserial   PRIMARY KEY,
+    fingerprint_id bigint      NOT NULL,
+    operation      char(1)     NOT NULL, -- I = insert, U = template changed, D = delete
+    changed_at     timestamptz NOT NULL DEFAULT now()
+);
+
+CREATE INDEX IF NOT EXISTS fingerprint_change_changed_at ON fingerprint_change (changed_at);
+
+CREATE OR REPLACE FUNCTION record_fingerprint_change() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        INSERT INTO fingerprint_change (fingerprint_id, operation) VALUES (OLD.id, 'D');
+    ELSE
+        INSERT INTO fingerprint_change (fingerprint_id, operation)
+            VALUES (NEW.id, CASE WHEN TG_OP = 'INSERT' THEN 'I' ELSE 'U' END);
+    END IF;
+    -- Identical notifications of one transaction are folded into one, so a batch insert wakes listeners once
+    PERFORM pg_notify('fingerprint_change', '');
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS fingerprint_change_insert_delete ON fingerprint_entity;
+CREATE TRIGGER fingerprint_change_insert_delete
+    AFTER INSERT OR DELETE ON fingerprint_entity
+    FOR EACH ROW EXECUTE FUNCTION record_fingerprint_change();
+
+DROP TRIGGER IF EXISTS fingerprint_change_update ON fingerprint_entity;
+CREATE TRIGGER fingerprint_change_update
+    AFTER UPDATE OF native_template, finger_type ON fingerprint_entity
+    FOR EACH ROW
+    WHEN (OLD.native_template IS DISTINCT FROM NEW.native_template OR OLD.finger_type IS DISTINCT FROM NEW.finger_type)
+    EXECUTE FUNCTION record_fingerprint_change();
@@ -0,0 +1,295 @@
+package org.neurotecfinger.matching;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ShardedIdentificationEngineTest {
+
+    private static final int SHARDS = 3;
+
+    private static final byte[] PROBE = { 0 };
+
+    private final List<ScriptedMatcher> matchers = new ArrayList<>();
+
+    private ExecutorService executor;
+
+    private ShardedIdentificationEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(SHARDS);
+        engine = new ShardedIdentificationEngine(() -> {
+            ScriptedMatcher matcher = new ScriptedMatcher();
+            matchers.add(matcher);
+            return matcher;
+        }, SHARDS, executor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void rejectsZeroShards() {
+        assertThatThrownBy(() -> new ShardedIdentificationEngine(ScriptedMatcher::new, 0, executor))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void spreadsTemplatesAcrossShardsById() {
+        enroll(0, 50, 1, 60, 2, 70, 3, 80, 4, 90);
+
+        assertThat(engine.size()).isEqualTo(5);
+        // Small non-negative ids land on shard id % shardCount
+        assertThat(matchers.get(0).ids()).containsExactlyInAnyOrder(0L, 3L);
+        assertThat(matchers.get(1).ids()).containsExactlyInAnyOrder(1L, 4L);
+        assertThat(matchers.get(2).ids()).containsExactlyInAnyOrder(2L);
+    }
+
+    @Test
+    void mergesShardResultsIntoGlobalTopK() {
+        enroll(0, 40, 1, 95, 2, 60, 3, 85, 4, 70, 5, 90, 6, 55);
+
+        List<MatchCandidate> candidates = engine.identify(PROBE, new IdentifyOptions(4, 0));
+
+        assertThat(ids(candidates)).containsExactly(1L, 5L, 3L, 4L);
+        assertThat(scores(candidates)).containsExactly(95, 90, 85, 70);
+    }
+
+    @Test
+    void breaksTiesByIdWhateverShardAnswersFirst() {
+        enroll(5, 80, 3, 80, 1, 80, 4, 80, 2, 90);
+        // The shard holding the lowest tied ids answers last
+        matchers.get(1).delayMs = 100;
+
+        List<MatchCandidate> candidates = engine.identify(PROBE, new IdentifyOptions(3, 0));
+
+        assertThat(ids(candidates)).containsExactly(2L, 1L, 3L);
+    }
+
+    @Test
+    void appliesMinScoreAndReturnsEverythingWithoutLimit() {
+        enroll(0, 40, 1, 95, 2, 60, 3, 85);
+
+        List<MatchCandidate> candidates = engine.identify(PROBE, new IdentifyOptions(0, 0, 60, null));
+
+        assertThat(ids(candidates)).containsExactly(1L, 3L, 2L);
+    }
+
+    @Test
+    void removesFromTheOwningShard() {
+        enroll(0, 50, 1, 60, 2, 70, 3, 80, 4, 90);
+
+        engine.remove(4);
+        engine.remove(3);
+        engine.remove(42);
+
+        assertThat(engine.size()).isEqualTo(3);
+        assertThat(matchers.get(0).ids()).containsExactly(0L);
+        assertThat(matchers.get(1).ids()).containsExactly(1L);
+        assertThat(ids(engine.identify(PROBE, new IdentifyOptions(10, 0)))).containsExactly(2L, 1L, 0L);
+    }
+
+    @Test
+    void skipsEmptyShards() {
+        enroll(0, 50, 3, 60);
+
+        assertThat(ids(engine.identify(PROBE, new IdentifyOptions(10, 0)))).containsExactly(3L, 0L);
+        assertThat(matchers.get(1).calls).isZero();
+        assertThat(matchers.get(2).calls).isZero();
+    }
+
+    @Test
+    void certainMatchStopsWaitingForSlowShards() throws InterruptedException {
+        enroll(0, 99, 1, 70, 2, 60);
+        CountDownLatch never = new CountDownLatch(1);
+        matchers.get(1).blockUntil = never;
+        matchers.get(2).blockUntil = never;
+
+        long start = System.nanoTime();
+        List<MatchCandidate> candidates = engine.identify(PROBE, new IdentifyOptions(10, 95));
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(5000);
+        assertThat(ids(candidates)).containsExactly(0L);
+        // The shards still matching are interrupted
+        assertThat(matchers.get(1).interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(matchers.get(2).interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void waitsForEveryShardBelowTheCertaintyThreshold() {
+        enroll(0, 90, 1, 70, 2, 60);
+        matchers.get(1).delayMs = 100;
+        matchers.get(2).delayMs = 100;
+
+        List<MatchCandidate> candidates = engine.identify(PROBE, new IdentifyOptions(10, 95));
+
+        assertThat(ids(candidates)).containsExactly(0L, 1L, 2L);
+    }
+
+    @Test
+    void singleShardIsMatchedOnTheCallingThread() {
+        List<ScriptedMatcher> single = new ArrayList<>();
+        ShardedIdentificationEngine oneShard = new ShardedIdentificationEngine(() -> {
+            ScriptedMatcher matcher = new ScriptedMatcher();
+            single.add(matcher);
+            return matcher;
+        }, 1, executor);
+        oneShard.enroll(Arrays.asList(template(1, 70), template(2, 80)));
+
+        assertThat(ids(oneShard.identify(PROBE, new IdentifyOptions(1, 0)))).containsExactly(2L);
+        assertThat(single.get(0).lastThread).isSameAs(Thread.currentThread());
+    }
+
+    @Test
+    void shardFailureIsReported() {
+        enroll(0, 50, 1, 60);
+        matchers.get(1).failure = new IllegalStateException("matcher broke");
+
+        assertThatThrownBy(() -> engine.identify(PROBE, new IdentifyOptions(10, 0)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasRootCauseMessage("matcher broke");
+    }
+
+    @Test
+    void clearEmptiesEveryShard() {
+        enroll(0, 50, 1, 60, 2, 70);
+
+        engine.clear();
+
+        assertThat(engine.size()).isZero();
+        assertThat(engine.identify(PROBE, new IdentifyOptions(10, 0))).isEmpty();
+    }
+
+    @Test
+    void closeClosesEveryShard() {
+        enroll(0, 50, 1, 60);
+
+        engine.close();
+
+        assertThat(matchers).allMatch(matcher -> matcher.closed);
+    }
+
+    // Pairs of id, score
+    private void enroll(long... idsAndScores) {
+        List<GalleryTemplate> templates = new ArrayList<>();
+        for (int i = 0; i < idsAndScores.length; i += 2) {
+            templates.add(template(idsAndScores[i], (int) idsAndScores[i + 1]));
+        }
+        engine.enroll(templates);
+    }
+
+    private static GalleryTemplate template(long id, int score) {
+        return new GalleryTemplate(id, "r_index", 1, new byte[] { (byte) score });
+    }
+
+    private static List<Long> ids(List<MatchCandidate> candidates) {
+        List<Long> ids = new ArrayList<>();
+        for (MatchCandidate candidate : candidates) {
+            ids.add(candidate.getId());
+        }
+        return ids;
+    }
+
+    private static List<Integer> scores(List<MatchCandidate> candidates) {
+        List<Integer> scores = new ArrayList<>();
+        for (MatchCandidate candidate : candidates) {
+            scores.add(candidate.getScore());
+        }
+        return scores;
+    }
+
+    /**
+     * Deterministic matcher: every enrolled record scores the value of its one-byte template, whatever the probe.
+     */
+    private static class ScriptedMatcher implements TemplateMatcher {
+
+        private final Map<Long, Integer> scores = new ConcurrentHashMap<>();
+
+        private final CountDownLatch interrupted = new CountDownLatch(1);
+
+        private volatile long delayMs;
+
+        private volatile CountDownLatch blockUntil;
+
+        private volatile RuntimeException failure;
+
+        private volatile int calls;
+
+        private volatile Thread lastThread;
+
+        private volatile boolean closed;
+
+        @Override
+        public void enroll(Collection<GalleryTemplate> templates) {
+            for (GalleryTemplate template : templates) {
+                scores.put(template.getId(), (int) template.getTemplate()[0]);
+            }
+        }
+
+        @Override
+        public void remove(long id) {
+            scores.remove(id);
+        }
+
+        @Override
+        public List<MatchCandidate> identify(byte[] probeTemplate, IdentifyOptions options) {
+            calls++;
+            lastThread = Thread.currentThread();
+            try {
+                if (delayMs > 0) Thread.sleep(delayMs);
+                if (blockUntil != null) blockUntil.await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                Thread.currentThread().interrupt();
+                return new ArrayList<>();
+            }
+            if (failure != null) throw failure;
+            int minScore = options.getMinScore() != null ? options.getMinScore() : 0;
+            List<MatchCandidate> candidates = new ArrayList<>();
+            scores.forEach((id, score) -> {
+                if (score >= minScore) candidates.add(new MatchCandidate(id, score));
+            });
+            candidates.sort(MatchCandidate.BEST_FIRST);
+            if (options.getMaxResults() > 0 && candidates.size() > options.getMaxResults()) {
+                return new ArrayList<>(candidates.subList(0, options.getMaxResults()));
+            }
+            return candidates;
+        }
+
+        List<Long> ids() {
+            return new ArrayList<>(scores.keySet());
+        }
+
+        @Override
+        public int size() {
+            return scores.size();
+        }
+
+        @Override
+        public void clear() {
+            scores.clear();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.neurotecfinger.pool;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EnginePoolTest {
+
+    private final CountingFactory factory = new CountingFactory();
+
+    private final EnginePool<Object> pool = new EnginePool<>("test", factory, 2, 100);
+
+    @Test
+    void reusesReleasedEngines() throws InterruptedException {
+        Object first = pool.borrow();
+        pool.release(first);
+
+        assertThat(pool.borrow()).isSameAs(first);
+        assertThat(factory.created).hasSize(1);
+        assertThat(pool.getCreatedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void timesOutWhenEveryEngineIsBorrowed() throws InterruptedException {
+        pool.borrow();
+        pool.borrow();
+
+        assertThatThrownBy(pool::borrow).hasMessageContaining("No free biometric engine");
+        assertThat(pool.getTimeoutCount()).isEqualTo(1);
+    }
+
+    @Test
+    void invalidatedEngineIsDestroyedAndReplaced() throws InterruptedException {
+        Object broken = pool.borrow();
+        pool.invalidate(broken);
+
+        assertThat(factory.destroyed).containsExactly(broken);
+        assertThat(pool.borrow()).isNotSameAs(broken);
+        assertThat(pool.getCreatedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void closeDestroysIdleEnginesAndBorrowedOnesOnRelease() throws InterruptedException {
+        Object idle = pool.borrow();
+        Object busy = pool.borrow();
+        pool.release(idle);
+
+        pool.close();
+
+        assertThat(factory.destroyed).containsExactly(idle);
+        assertThat(pool.getCreatedCount()).isEqualTo(1);
+
+        pool.release(busy);
+        assertThat(factory.destroyed).containsExactly(idle, busy);
+        assertThat(pool.getCreatedCount()).isZero();
+
+        // Released twice or closed twice: nothing is destroyed again
+        pool.release(busy);
+        pool.close();
+        assertThat(factory.destroyed).hasSize(2);
+    }
+
+    @Test
+    void borrowedEngineInvalidatedAfterCloseIsDestroyedOnce() throws InterruptedException {
+        Object busy = pool.borrow();
+        pool.close();
+
+        pool.invalidate(busy);
+        pool.release(busy);
+
+        assertThat(factory.destroyed).containsExactly(busy);
+    }
+
+    @Test
+    void closedPoolRefusesToLend() {
+        pool.close();
+
+        assertThatThrownBy(pool::borrow).isInstanceOf(IllegalStateException.class);
+        // The engine created for the refused borrow is not leaked
+        assertThat(factory.destroyed).isEqualTo(factory.created);
+        assertThat(pool.getCreatedCount()).isZero();
+    }
+
+    private static class CountingFactory implements EngineFactory<Object> {
+
+        private final List<Object> created = new ArrayList<>();
+
+        private final List<Object> destroyed = new ArrayList<>();
+
+        @Override
+        public Object create() {
+            Object engine = new Object();
+            created.add(engine);
+            return engine;
+        }
+
+        @Override
+        public void destroy(Object engine) {
+            destroyed.add(engine);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package org.neurotecfinger.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the trigger of {@code db/migrate-003-fingerprint-change-feed.sql} on a real PostgreSQL.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class FingerprintChangeTriggerTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    private DriverManagerDataSource dataSource;
+
+    private FingerprintChangeLog changeLog;
+
+    @BeforeEach
+    void setUp() throws SQLException, IOException {
+        dataSource = new DriverManagerDataSource(POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword());
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            // Columns as created by ddl-auto for FingerprintEntity after migrate-002
+            statement.execute("CREATE TABLE fingerprint_entity (id bigint PRIMARY KEY, finger_type varchar(255), "
+                    + "quality integer, native_template bytea NOT NULL, created_at timestamp)");
+            // pgjdbc runs the whole script, including the dollar-quoted function body
+            statement.execute(migration());
+        }
+        changeLog = new FingerprintChangeLog();
+        ReflectionTestUtils.setField(changeLog, "jdbcTemplate", new JdbcTemplate(dataSource));
+        ReflectionTestUtils.setField(changeLog, "namedJdbcTemplate", new NamedParameterJdbcTemplate(dataSource));
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE fingerprint_entity");
+            statement.execute("DROP TABLE fingerprint_change");
+            statement.execute("DROP FUNCTION record_fingerprint_change()");
+        }
+    }
+
+    @Test
+    void recordsInsertTemplateUpdateAndDelete() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            insert(connection, 10, "r_index");
+            statement.execute("UPDATE fingerprint_entity SET native_template = '\\x0102' WHERE id = 10");
+            statement.execute("UPDATE fingerprint_entity SET finger_type = 'l_index' WHERE id = 10");
+            statement.execute("DELETE FROM fingerprint_entity WHERE id = 10");
+        }
+
+        assertThat(operations(changeLog.changesAfter(0, 100))).containsExactly("10I", "10U", "10U", "10D");
+    }
+
+    @Test
+    void ignoresUpdatesThatDoNotChangeTheTemplateOrFingerType() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            insert(connection, 10, "r_index");
+            statement.execute("UPDATE fingerprint_entity SET quality = 1 WHERE id = 10");
+            statement.execute("UPDATE fingerprint_entity SET native_template = native_template WHERE id = 10");
+        }
+
+        assertThat(operations(changeLog.changesAfter(0, 100))).containsExactly("10I");
+    }
+
+    @Test
+    void changeBecomesVisibleWhenItsTransactionCommits() throws SQLException {
+        try (Connection slow = dataSource.getConnection(); Connection fast = dataSource.getConnection()) {
+            slow.setAutoCommit(false);
+            insert(slow, 10, "r_index");
+            insert(fast, 11, "r_index");
+
+            // The slow writer took seq 1 but has not committed: only seq 2 is visible, leaving a gap below it
+            List<FingerprintChange> visible = changeLog.changesAfter(0, 100);
+            assertThat(operations(visible)).containsExactly("11I");
+            assertThat(visible.get(0).getSeq()).isEqualTo(2);
+            assertThat(changeLog.changesIn(Arrays.asList(1L))).isEmpty();
+
+            slow.commit();
+            assertThat(operations(changeLog.changesIn(Arrays.asList(1L)))).containsExactly("10I");
+        }
+    }
+
+    @Test
+    void rolledBackChangeLeavesPermanentGap() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            insert(connection, 10, "r_index");
+            connection.rollback();
+            connection.setAutoCommit(true);
+            insert(connection, 11, "r_index");
+        }
+
+        List<FingerprintChange> visible = changeLog.changesAfter(0, 100);
+        assertThat(operations(visible)).containsExactly("11I");
+        assertThat(visible.get(0).getSeq()).isEqualTo(2);
+    }
+
+    @Test
+    void notifiesOncePerCommittedTransaction() throws SQLException {
+        try (Connection listener = dataSource.getConnection(); Connection writer = dataSource.getConnection()) {
+            try (Statement statement = listener.createStatement()) {
+                statement.execute("LISTEN " + FingerprintChangeLog.CHANNEL);
+            }
+            PGConnection pgListener = listener.unwrap(PGConnection.class);
+
+            writer.setAutoCommit(false);
+            insert(writer, 10, "r_index");
+            insert(writer, 11, "r_index");
+            insert(writer, 12, "r_index");
+            assertThat(notifications(pgListener, 200)).isEmpty();
+            writer.commit();
+
+            // Duplicate notifications of one transaction are folded into one
+            assertThat(notifications(pgListener, 2000)).hasSize(1);
+
+            writer.setAutoCommit(true);
+            insert(writer, 13, "r_index");
+            insert(writer, 14, "r_index");
+            List<PGNotification> separate = new ArrayList<>(notifications(pgListener, 2000));
+            if (separate.size() < 2) separate.addAll(notifications(pgListener, 2000));
+            assertThat(separate).hasSize(2);
+        }
+    }
+
+    private static void insert(Connection connection, long id, String fingerType) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO fingerprint_entity (id, finger_type, quality, native_template, created_at) VALUES (?, ?, 2, ?, now())")) {
+            statement.setLong(1, id);
+            statement.setString(2, fingerType);
+            statement.setBytes(3, new byte[] { 1, 2, 3 });
+            statement.executeUpdate();
+        }
+    }
+
+    private static List<PGNotification> notifications(PGConnection connection, int timeoutMs) throws SQLException {
+        PGNotification[] received = connection.getNotifications(timeoutMs);
+        return received != null ? Arrays.asList(received) : new ArrayList<>();
+    }
+
+    private static List<String> operations(List<FingerprintChange> changes) {
+        List<String> operations = new ArrayList<>();
+        for (FingerprintChange change : changes) {
+            operations.add(change.getFingerprintId() + String.valueOf(change.getOperation()));
+        }
+        return operations;
+    }
+
+    private static String migration() throws IOException {
+        try (InputStream in = FingerprintChangeTriggerTest.class.getResourceAsStream("/db/migrate-003-fingerprint-change-feed.sql")) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
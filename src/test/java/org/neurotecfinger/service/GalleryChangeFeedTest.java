@@ -0,0 +1,217 @@
+package org.neurotecfinger.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.neurotecfinger.model.FingerprintTemplateView;
+import org.neurotecfinger.repository.FingerprintChange;
+import org.neurotecfinger.repository.FingerprintChangeLog;
+import org.neurotecfinger.repository.FingerprintRepository;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class GalleryChangeFeedTest {
+
+    private static final long GAP_TIMEOUT_MS = 60_000;
+
+    private FakeChangeLog changeLog;
+
+    private FingerprintRepository fingerprintRepository;
+
+    private FingerprintGallery gallery;
+
+    private GalleryChangeFeed feed;
+
+    @BeforeEach
+    void setUp() {
+        changeLog = new FakeChangeLog();
+        fingerprintRepository = mock(FingerprintRepository.class);
+        gallery = mock(FingerprintGallery.class);
+        feed = new GalleryChangeFeed();
+        ReflectionTestUtils.setField(feed, "changeLog", changeLog);
+        ReflectionTestUtils.setField(feed, "fingerprintRepository", fingerprintRepository);
+        ReflectionTestUtils.setField(feed, "gallery", gallery);
+        ReflectionTestUtils.setField(feed, "batchSize", 100);
+        ReflectionTestUtils.setField(feed, "gapTimeoutMs", GAP_TIMEOUT_MS);
+    }
+
+    @Test
+    void appliesChangesInOrderAndAdvancesWatermark() {
+        changeLog.commit(1, 10, FingerprintChange.INSERT);
+        changeLog.commit(2, 11, FingerprintChange.INSERT);
+        changeLog.commit(3, 10, FingerprintChange.DELETE);
+
+        assertThat(feed.poll()).isEqualTo(3);
+
+        verify(gallery).remove(10);
+        assertThat(upsertedIds()).containsExactly(11L);
+        assertThat(watermark()).isEqualTo(3);
+    }
+
+    @Test
+    void outOfOrderCommitIsAppliedWhenItsGapFills() {
+        // seq 2 is assigned first but its transaction commits after seq 3
+        changeLog.commit(1, 10, FingerprintChange.INSERT);
+        changeLog.commit(3, 12, FingerprintChange.INSERT);
+
+        feed.poll();
+
+        assertThat(upsertedIds()).containsExactly(10L, 12L);
+        assertThat(watermark()).isEqualTo(1);
+        assertThat(openGaps()).containsOnlyKeys(2L);
+
+        clearInvocations(fingerprintRepository, gallery);
+        changeLog.commit(2, 11, FingerprintChange.INSERT);
+        changeLog.commit(4, 13, FingerprintChange.INSERT);
+
+        // Only seq 4 is new above the highest applied change; seq 2 comes from the gap lookup
+        assertThat(feed.poll()).isEqualTo(1);
+
+        assertThat(upsertedIds()).containsExactly(11L, 13L);
+        assertThat(watermark()).isEqualTo(4);
+        assertThat(openGaps()).isEmpty();
+    }
+
+    @Test
+    void gapStopsTheWatermarkUntilItTimesOut() {
+        // seq 1 belongs to a transaction that rolled back and never becomes visible
+        changeLog.commit(2, 11, FingerprintChange.INSERT);
+        changeLog.commit(3, 12, FingerprintChange.INSERT);
+
+        feed.poll();
+        assertThat(watermark()).isEqualTo(0);
+        assertThat(openGaps()).containsOnlyKeys(1L);
+
+        long openedAt = openGaps().get(1L);
+        feed.advanceWatermark(openedAt + GAP_TIMEOUT_MS - 1);
+        assertThat(watermark()).isEqualTo(0);
+
+        feed.advanceWatermark(openedAt + GAP_TIMEOUT_MS);
+        assertThat(watermark()).isEqualTo(3);
+        assertThat(openGaps()).isEmpty();
+    }
+
+    @Test
+    void changeCommittedAfterItsGapTimedOutIsNotReplayed() {
+        changeLog.commit(2, 11, FingerprintChange.INSERT);
+        feed.poll();
+        feed.advanceWatermark(openGaps().get(1L) + GAP_TIMEOUT_MS);
+        assertThat(watermark()).isEqualTo(2);
+
+        clearInvocations(fingerprintRepository, gallery);
+        changeLog.commit(1, 10, FingerprintChange.INSERT);
+
+        assertThat(feed.poll()).isEqualTo(0);
+        verifyNoInteractions(gallery);
+    }
+
+    @Test
+    void repeatedNotificationsDoNotReapplyChanges() {
+        changeLog.commit(1, 10, FingerprintChange.INSERT);
+        changeLog.commit(3, 12, FingerprintChange.UPDATE);
+        feed.poll();
+        clearInvocations(fingerprintRepository, gallery);
+
+        // Further wake-ups with nothing new: neither the applied changes nor the open gap touch the gallery
+        assertThat(feed.poll()).isEqualTo(0);
+        assertThat(feed.poll()).isEqualTo(0);
+
+        verifyNoInteractions(gallery);
+        verify(fingerprintRepository, never()).findByIdIn(anyCollection(), eq(FingerprintTemplateView.class));
+        assertThat(watermark()).isEqualTo(1);
+    }
+
+    @Test
+    void batchCollapsesToTheLastOperationPerRecord() {
+        changeLog.commit(1, 10, FingerprintChange.INSERT);
+        changeLog.commit(2, 10, FingerprintChange.DELETE);
+        changeLog.commit(3, 11, FingerprintChange.DELETE);
+        changeLog.commit(4, 11, FingerprintChange.INSERT);
+        changeLog.commit(5, 12, FingerprintChange.UPDATE);
+
+        feed.poll();
+
+        verify(gallery).remove(10);
+        verify(gallery, never()).remove(11);
+        // An updated template replaces the enrolled one
+        verify(gallery).remove(12);
+        assertThat(upsertedIds()).containsExactly(11L, 12L);
+    }
+
+    @Test
+    void drainsLargeBacklogInBatches() {
+        ReflectionTestUtils.setField(feed, "batchSize", 2);
+        for (long seq = 1; seq <= 5; seq++) {
+            changeLog.commit(seq, 100 + seq, FingerprintChange.INSERT);
+        }
+
+        assertThat(feed.poll()).isEqualTo(2);
+        assertThat(feed.poll()).isEqualTo(2);
+        assertThat(feed.poll()).isEqualTo(1);
+        assertThat(watermark()).isEqualTo(5);
+        verify(gallery, never()).remove(anyLong());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Long> upsertedIds() {
+        ArgumentCaptor<Collection<Long>> ids = ArgumentCaptor.forClass(Collection.class);
+        verify(fingerprintRepository).findByIdIn(ids.capture(), eq(FingerprintTemplateView.class));
+        return new ArrayList<>(ids.getValue());
+    }
+
+    private long watermark() {
+        return (long) ReflectionTestUtils.getField(feed, "watermark");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Long, Long> openGaps() {
+        return (Map<Long, Long>) ReflectionTestUtils.getField(feed, "openGaps");
+    }
+
+    /**
+     * In-memory feed: a change is visible from the moment it is committed, whatever its sequence number.
+     */
+    private static class FakeChangeLog extends FingerprintChangeLog {
+
+        private final TreeMap<Long, FingerprintChange> visible = new TreeMap<>();
+
+        void commit(long seq, long fingerprintId, char operation) {
+            visible.put(seq, new FingerprintChange(seq, fingerprintId, operation));
+        }
+
+        @Override
+        public List<FingerprintChange> changesAfter(long seq, int limit) {
+            List<FingerprintChange> changes = new ArrayList<>();
+            for (FingerprintChange change : visible.tailMap(seq, false).values()) {
+                if (changes.size() == limit) break;
+                changes.add(change);
+            }
+            return changes;
+        }
+
+        @Override
+        public List<FingerprintChange> changesIn(Collection<Long> seqs) {
+            List<FingerprintChange> changes = new ArrayList<>();
+            for (long seq : seqs) {
+                FingerprintChange change = visible.get(seq);
+                if (change != null) changes.add(change);
+            }
+            return changes;
+        }
+    }
+}